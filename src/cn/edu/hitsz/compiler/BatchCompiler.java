@@ -0,0 +1,152 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 批量编译驱动程序
+ * <br>
+ * 接受若干源文件或目录 (目录下的所有文件都会被编译), 在线程池上并行地对每个文件执行一次 {@link CompilationPipeline},
+ * 所有文件共享同一张 LR 分析表. 每个文件的输出写在输出目录下以该文件命名 (去掉扩展名) 的子目录中,
+ * 目录中的文件与单文件编译时的输出同名.
+ * <br>
+ * 某个文件编译失败 (包括语法错误) 不会影响其它文件, 失败的原因记录在对应的 {@link Result} 中, 该文件不写出任何结果.
+ *
+ * @author hogan
+ */
+public class BatchCompiler {
+    /**
+     * 一个待编译的文件
+     *
+     * @param source    源文件
+     * @param outputDir 输出目录
+     */
+    public record Source(Path source, Path outputDir) {
+    }
+
+    /**
+     * 一个文件的编译结果
+     *
+     * @param source  待编译的文件
+     * @param nanos   编译耗时
+     * @param failure 编译失败的原因, 成功时为 null
+     */
+    public record Result(Source source, long nanos, Throwable failure) {
+        public boolean succeeded() {
+            return failure == null;
+        }
+    }
+
+    private final CompilationPipeline pipeline;
+    private final Path outputRoot;
+    private final int threads;
+
+    /**
+     * @param lrTable    所有文件共享的分析表
+     * @param outputRoot 输出目录
+     * @param threads    工作线程数
+     */
+    public BatchCompiler(ParseTable lrTable, Path outputRoot, int threads) {
+        this.pipeline = new CompilationPipeline(lrTable);
+        this.outputRoot = outputRoot;
+        this.threads = threads;
+    }
+
+    /**
+     * 列出给定路径下的所有待编译文件
+     * <br>
+     * 对于目录, 其下所有文件 (递归地) 按路径排序, 输出在 输出目录/目录名/相对路径 中; 对于文件, 输出在 输出目录/文件名 中.
+     *
+     * @param paths 源文件或目录
+     * @return 待编译的文件
+     * @throws RuntimeException 两个文件的输出目录相同
+     */
+    public List<Source> collect(List<String> paths) {
+        final var sources = new ArrayList<Source>();
+        for (final var pathString : paths) {
+            final var path = Path.of(pathString);
+            if (Files.isDirectory(path)) {
+                final var base = outputRoot.resolve(path.toAbsolutePath().normalize().getFileName().toString());
+                try (final Stream<Path> files = Files.walk(path)) {
+                    files.filter(Files::isRegularFile).sorted().forEach(file ->
+                        sources.add(new Source(file, base.resolve(withoutExtension(path.relativize(file))))));
+                } catch (IOException e) {
+                    throw new RuntimeException("IO Exception on " + path, e);
+                }
+            } else {
+                sources.add(new Source(path, outputRoot.resolve(withoutExtension(path.getFileName()))));
+            }
+        }
+
+        final var outputDirs = new HashSet<Path>();
+        for (final var source : sources) {
+            if (!outputDirs.add(source.outputDir())) {
+                throw new RuntimeException("Duplicated output directory: " + source.outputDir());
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * 并行编译所有文件
+     *
+     * @param sources 待编译的文件
+     * @return 与 sources 顺序相同的编译结果
+     */
+    public List<Result> compile(List<Source> sources) {
+        final var workerId = new AtomicInteger();
+        final var executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final var thread = new Thread(runnable, "compile-worker-" + workerId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            final var tasks = sources.stream().map(source -> (Callable<Result>) () -> compileOne(source)).toList();
+            final var results = new ArrayList<Result>(sources.size());
+            for (final var future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Result compileOne(Source source) {
+        final var start = System.nanoTime();
+        try {
+            // 先完成编译, 失败的文件不会留下输出目录
+            final var result = pipeline.compileFile(source.source().toString());
+            Files.createDirectories(source.outputDir());
+            result.writeTo(CompilationOutputs.in(source.outputDir()));
+            return new Result(source, System.nanoTime() - start, null);
+        } catch (IOException | RuntimeException e) {
+            return new Result(source, System.nanoTime() - start, e);
+        }
+    }
+
+    private static Path withoutExtension(Path path) {
+        final var name = path.getFileName().toString();
+        final var dot = name.lastIndexOf('.');
+        final var stripped = dot > 0 ? name.substring(0, dot) : name;
+        final var parent = path.getParent();
+        return parent == null ? Path.of(stripped) : parent.resolve(stripped);
+    }
+}
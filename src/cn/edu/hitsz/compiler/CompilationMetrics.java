@@ -0,0 +1,227 @@
+package cn.edu.hitsz.compiler;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 一次编译的性能指标
+ * <br>
+ * 对每个阶段记录墙钟时间, 当前线程的 CPU 时间与当前线程分配的字节数 (由 {@link com.sun.management.ThreadMXBean} 给出),
+ * 另记录各阶段处理的对象个数, 如词法单元数, 移入与规约次数, IR 指令数, 寄存器不足的次数与汇编行数.
+ * 结果以 JSON 写在其它输出旁边, 便于跨版本比较编译性能, 找出变慢的阶段.
+ * <br>
+ * 只统计调用线程: 后台观察者 (见 {@link Configs#PARSER_ASYNC_COLLECTOR}) 上的 CPU 时间与分配不计入, 语法分析阶段的墙钟时间包含等待它的时间.
+ * 按需分析 (见 {@link Configs#LEXER_STREAM_TOKENS}) 时词法分析发生在语法分析阶段中.
+ *
+ * @author hogan
+ */
+public final class CompilationMetrics {
+    /**
+     * 编译的各个阶段
+     */
+    public enum Stage {
+        /**
+         * 词法分析
+         */
+        LEXER,
+        /**
+         * 语法分析, 包括作为观察者运行的语义分析与 IR 生成
+         */
+        PARSER,
+        /**
+         * IR 模拟执行
+         */
+        EMULATOR,
+        /**
+         * 寄存器分配与汇编生成
+         */
+        CODEGEN
+    }
+
+    /**
+     * 各阶段处理的对象个数
+     */
+    public enum Counter {
+        /**
+         * 语法分析读入的词法单元数
+         */
+        TOKENS,
+        /**
+         * 移入次数
+         */
+        SHIFTS,
+        /**
+         * 规约次数
+         */
+        REDUCES,
+        /**
+         * IR 指令数
+         */
+        IR_INSTRUCTIONS,
+        /**
+         * 寄存器分配时找不到空闲寄存器, 需要溢出到内存的次数
+         */
+        SPILLS,
+        /**
+         * 生成的汇编行数
+         */
+        ASM_LINES
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final boolean enabled;
+    private final long[] wallNanos = new long[Stage.values().length];
+    private final long[] cpuNanos = new long[Stage.values().length];
+    private final long[] allocatedBytes = new long[Stage.values().length];
+    private final long[] counters = new long[Counter.values().length];
+
+    private Stage current = null;
+    private long startWall;
+    private long startCpu;
+    private long startAllocated;
+
+    /**
+     * @param enabled 为 false 时不做任何测量, 见 {@link Configs#COLLECT_METRICS}
+     */
+    public CompilationMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 开始测量一个阶段, 各阶段不能嵌套
+     *
+     * @param stage 阶段
+     */
+    public void begin(Stage stage) {
+        if (!enabled) {
+            return;
+        }
+        if (current != null) {
+            throw new RuntimeException("Stage " + current + " is not ended before " + stage);
+        }
+        current = stage;
+        startAllocated = THREADS.getCurrentThreadAllocatedBytes();
+        startCpu = THREADS.getCurrentThreadCpuTime();
+        startWall = System.nanoTime();
+    }
+
+    /**
+     * 结束当前阶段的测量, 同一阶段多次测量的结果累加
+     */
+    public void end() {
+        if (!enabled) {
+            return;
+        }
+        if (current == null) {
+            throw new RuntimeException("No stage to end");
+        }
+        final var wall = System.nanoTime() - startWall;
+        final var cpu = THREADS.getCurrentThreadCpuTime() - startCpu;
+        final var allocated = THREADS.getCurrentThreadAllocatedBytes() - startAllocated;
+        final var index = current.ordinal();
+        wallNanos[index] += wall;
+        cpuNanos[index] += cpu;
+        allocatedBytes[index] += allocated;
+        current = null;
+    }
+
+    /**
+     * @param counter 计数项
+     * @param value   计数值
+     */
+    public void set(Counter counter, long value) {
+        counters[counter.ordinal()] = value;
+    }
+
+    public long wallNanos(Stage stage) {
+        return wallNanos[stage.ordinal()];
+    }
+
+    public long cpuNanos(Stage stage) {
+        return cpuNanos[stage.ordinal()];
+    }
+
+    public long allocatedBytes(Stage stage) {
+        return allocatedBytes[stage.ordinal()];
+    }
+
+    public long get(Counter counter) {
+        return counters[counter.ordinal()];
+    }
+
+    /**
+     * @return 各阶段墙钟时间之和
+     */
+    public long totalWallNanos() {
+        var total = 0L;
+        for (final var wall : wallNanos) {
+            total += wall;
+        }
+        return total;
+    }
+
+    /**
+     * 转为 JSON, 形如
+     * <pre>
+     * {
+     *   "totalWallNanos": 1234567,
+     *   "stages": {
+     *     "lexer": {"wallNanos": 123, "cpuNanos": 120, "allocatedBytes": 4096},
+     *     ...
+     *   },
+     *   "counters": {"tokens": 42, "shifts": 42, ...}
+     * }
+     * </pre>
+     *
+     * @return JSON 的各行
+     */
+    public List<String> toJson() {
+        final var lines = new ArrayList<String>();
+        lines.add("{");
+        lines.add("  \"totalWallNanos\": " + totalWallNanos() + ",");
+        lines.add("  \"stages\": {");
+        final var stages = Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            final var stage = stages[i];
+            lines.add("    \"%s\": {\"wallNanos\": %d, \"cpuNanos\": %d, \"allocatedBytes\": %d}%s".formatted(
+                jsonName(stage), wallNanos(stage), cpuNanos(stage), allocatedBytes(stage),
+                i + 1 < stages.length ? "," : ""));
+        }
+        lines.add("  },");
+        lines.add("  \"counters\": {");
+        final var counterValues = Counter.values();
+        for (int i = 0; i < counterValues.length; i++) {
+            final var counter = counterValues[i];
+            lines.add("    \"%s\": %d%s".formatted(
+                jsonName(counter), get(counter), i + 1 < counterValues.length ? "," : ""));
+        }
+        lines.add("  }");
+        lines.add("}");
+        return lines;
+    }
+
+    /**
+     * @return 小驼峰形式的名字, 如 IR_INSTRUCTIONS 为 irInstructions
+     */
+    private static String jsonName(Enum<?> value) {
+        final var name = new StringBuilder();
+        var upper = false;
+        for (final var c : value.name().toLowerCase(Locale.ROOT).toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.nio.file.Path;
+
+/**
+ * 一次编译的各个输出文件的路径
+ *
+ * @param tokens           词法单元流
+ * @param oldSymbolTable   语义分析前的符号表
+ * @param parserList       规约出的产生式列表
+ * @param newSymbolTable   语义分析后的符号表
+ * @param intermediateCode 中间代码
+ * @param emulateResult    IR 模拟执行的结果
+ * @param assembly         汇编代码
+ * @param metrics          各阶段的性能指标
+ * @author hogan
+ */
+public record CompilationOutputs(String tokens, String oldSymbolTable, String parserList, String newSymbolTable,
+                                 String intermediateCode, String emulateResult, String assembly,
+                                 String metrics) {
+    /**
+     * @return {@link FilePathConfig} 中的默认输出路径
+     */
+    public static CompilationOutputs defaults() {
+        return new CompilationOutputs(
+            FilePathConfig.TOKEN_PATH,
+            FilePathConfig.OLD_SYMBOL_TABLE,
+            FilePathConfig.PARSER_PATH,
+            FilePathConfig.NEW_SYMBOL_TABLE,
+            FilePathConfig.INTERMEDIATE_CODE_PATH,
+            FilePathConfig.EMULATE_RESULT,
+            FilePathConfig.ASSEMBLY_LANGUAGE_PATH,
+            FilePathConfig.METRICS_PATH
+        );
+    }
+
+    /**
+     * @param directory 输出目录
+     * @return 与默认输出同名, 但位于给定目录下的输出路径
+     */
+    public static CompilationOutputs in(Path directory) {
+        final var defaults = defaults();
+        return new CompilationOutputs(
+            resolve(directory, defaults.tokens()),
+            resolve(directory, defaults.oldSymbolTable()),
+            resolve(directory, defaults.parserList()),
+            resolve(directory, defaults.newSymbolTable()),
+            resolve(directory, defaults.intermediateCode()),
+            resolve(directory, defaults.emulateResult()),
+            resolve(directory, defaults.assembly()),
+            resolve(directory, defaults.metrics())
+        );
+    }
+
+    private static String resolve(Path directory, String defaultPath) {
+        return directory.resolve(Path.of(defaultPath).getFileName()).toString();
+    }
+}
@@ -0,0 +1,190 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.CompilationMetrics.Counter;
+import cn.edu.hitsz.compiler.CompilationMetrics.Stage;
+import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.errors.ErrorDefination;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.jfr.CompileEvent;
+import cn.edu.hitsz.compiler.lexer.CharacterSource;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.PrintingLexerTraceListener;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SemanticIRGenerator;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+
+/**
+ * 单个源文件的完整编译流程: 词法分析, 语法分析, 语义分析, IR 生成, IR 模拟执行与汇编生成
+ * <br>
+ * 每次编译都在一个新的 {@link CompilationSession} 中进行, 使用独立的符号表, 观察者与临时变量分配器,
+ * 各次编译之间只共享只读的词法单元类型, 语法与 LR 分析表, 所以同一个流水线可以在多个线程上同时编译不同的文件.
+ *
+ * @author hogan
+ */
+public class CompilationPipeline {
+    private final ParseTable lrTable;
+
+    /**
+     * @param lrTable 所有编译共享的分析表
+     */
+    public CompilationPipeline(ParseTable lrTable) {
+        this.lrTable = lrTable;
+    }
+
+    /**
+     * 编译一个源文件, 并写出各阶段的结果
+     *
+     * @param sourcePath 源文件路径
+     * @param outputs    各输出文件的路径
+     * @throws RuntimeException 词法, 语法或语义错误, 此时不写出任何结果
+     */
+    public void compile(String sourcePath, CompilationOutputs outputs) {
+        compileFile(sourcePath).writeTo(outputs);
+    }
+
+    /**
+     * 编译一个源文件, 不写出任何文件
+     *
+     * @param sourcePath 源文件路径
+     * @return 各阶段的结果
+     * @throws RuntimeException 词法, 语法或语义错误
+     */
+    public CompilationResult compileFile(String sourcePath) {
+        return run(sourcePath, lexer -> lexer.loadFile(sourcePath));
+    }
+
+    /**
+     * 编译内存中的源代码, 不读写任何文件
+     *
+     * @param code 源代码
+     * @return 各阶段的结果
+     * @throws RuntimeException 词法, 语法或语义错误
+     */
+    public CompilationResult compileSource(CharSequence code) {
+        return run("<memory>", lexer -> lexer.loadSource(CharacterSource.of(code)));
+    }
+
+    private CompilationResult run(String source, Consumer<LexicalAnalyzer> loader) {
+        final var event = new CompileEvent();
+        event.begin();
+
+        // 构建本次编译的符号表与临时变量分配器以供各部分使用
+        final var session = CompilationSession.create(lrTable);
+        final var symbolTable = session.symbolTable();
+        final var temps = session.temps();
+        final var metrics = new CompilationMetrics(Configs.COLLECT_METRICS);
+
+        // 词法分析
+        metrics.begin(Stage.LEXER);
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        if (Configs.LEXER_TRACE) {
+            lexer.registerTraceListener(new PrintingLexerTraceListener());
+        }
+        if (Configs.LEXER_STREAM_TOKENS) {
+            lexer.enableStreaming();
+        }
+        List<String> tokenLines = null;
+        List<String> oldSymbolTable = null;
+        final SyntaxAnalyzer parser;
+        final ProductionCollector productionCollector;
+        final List<Instruction> instructions;
+        // 按需分析时数据源在语法分析读到 EOF 时才关闭, 语法分析提前出错时在这里关闭
+        try {
+            loader.accept(lexer);
+            lexer.run();
+            final var tokens = lexer.getTokens();
+            metrics.end();
+            // 按需分析时 token 要到语法分析时才被识别出来, 此时无法输出 token 列表与语义分析前的符号表
+            if (!Configs.LEXER_STREAM_TOKENS) {
+                tokenLines = StreamSupport.stream(tokens.spliterator(), false).map(Token::toString).toList();
+                oldSymbolTable = symbolTable.toLines();
+            }
+
+            // 加载 LR 分析驱动程序
+            metrics.begin(Stage.PARSER);
+            parser = new SyntaxAnalyzer(symbolTable);
+            parser.loadTokens(tokens);
+            parser.loadLRTable(session.lrTable());
+
+            // 加入生成规约列表的 Observer, 它不依赖其它部分的状态, 可以放到后台线程上运行
+            productionCollector = new ProductionCollector(session.grammar().beginProduction());
+            if (Configs.PARSER_ASYNC_COLLECTOR) {
+                parser.registerAsyncObserver(productionCollector);
+            } else {
+                parser.registerObserver(productionCollector);
+            }
+
+            if (Configs.PARSER_FUSED_OBSERVER) {
+                // 加入在同一个值栈上完成语义检查与 IR 生成的 Observer
+                final var semanticIRGenerator = new SemanticIRGenerator(temps, session.variables());
+                parser.registerObserver(semanticIRGenerator);
+
+                // 执行语法解析并在解析过程中依次调用各 Observer
+                parser.run();
+
+                instructions = semanticIRGenerator.getIR();
+            } else {
+                // 加入用作语义检查的 Observer
+                final var semanticAnalyzer = new SemanticAnalyzer();
+                parser.registerObserver(semanticAnalyzer);
+
+                // 加入用作 IR 生成的 Observer
+                final var irGenerator = new IRGenerator(temps, session.variables());
+                parser.registerObserver(irGenerator);
+
+                // 执行语法解析并在解析过程中依次调用各 Observer
+                parser.run();
+
+                instructions = irGenerator.getIR();
+            }
+        } finally {
+            lexer.close();
+        }
+        metrics.end();
+        // 未被接受的输入只得到了部分的规约列表与 IR, 不能继续编译, 也不应写出任何结果
+        if (!parser.isAccepted()) {
+            throw new RuntimeException(ErrorDefination.NOT_ACCEPTED.formatted(parser.getTokenCount()));
+        }
+        metrics.set(Counter.TOKENS, parser.getTokenCount());
+        metrics.set(Counter.SHIFTS, parser.getShiftCount());
+        metrics.set(Counter.REDUCES, parser.getReduceCount());
+        metrics.set(Counter.IR_INSTRUCTIONS, instructions.size());
+        final var intermediateCode = instructions.stream().map(Instruction::toString).toList();
+
+        // 模拟执行 IR
+        metrics.begin(Stage.EMULATOR);
+        final var emulator = IREmulator.load(instructions);
+        final var emulateResult = emulator.execute().map(Objects::toString).orElse("No return value");
+        metrics.end();
+
+        // 由 IR 生成汇编
+        metrics.begin(Stage.CODEGEN);
+        final var asmGenerator = new AssemblyGenerator(temps);
+        asmGenerator.loadIR(instructions);
+        asmGenerator.run();
+        final var assembly = asmGenerator.getAssembly();
+        metrics.end();
+        metrics.set(Counter.SPILLS, asmGenerator.getSpillCount());
+        metrics.set(Counter.ASM_LINES, assembly.size());
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.tokens = parser.getTokenCount();
+            event.irInstructions = instructions.size();
+            event.asmLines = assembly.size();
+            event.commit();
+        }
+
+        return new CompilationResult(tokenLines, oldSymbolTable, productionCollector.toLines(),
+            symbolTable.toLines(), intermediateCode, emulateResult, assembly, metrics.isEnabled() ? metrics : null);
+    }
+}
@@ -0,0 +1,44 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.List;
+
+/**
+ * 一次编译在内存中的全部结果, 每一项都与 {@link CompilationOutputs} 中对应文件的内容相同
+ *
+ * @param tokens           词法单元流, 按需分析时为 null
+ * @param oldSymbolTable   语义分析前的符号表, 按需分析时为 null
+ * @param parserList       规约出的产生式列表
+ * @param newSymbolTable   语义分析后的符号表
+ * @param intermediateCode 中间代码
+ * @param emulateResult    IR 模拟执行的结果
+ * @param assembly         汇编代码
+ * @param metrics          各阶段的性能指标, 未开启时为 null
+ * @author hogan
+ */
+public record CompilationResult(List<String> tokens, List<String> oldSymbolTable, List<String> parserList,
+                                List<String> newSymbolTable, List<String> intermediateCode, String emulateResult,
+                                List<String> assembly, CompilationMetrics metrics) {
+    /**
+     * 将结果写入文件
+     *
+     * @param outputs 各输出文件的路径
+     */
+    public void writeTo(CompilationOutputs outputs) {
+        if (tokens != null) {
+            FileUtils.writeLines(outputs.tokens(), tokens);
+        }
+        if (oldSymbolTable != null) {
+            FileUtils.writeLines(outputs.oldSymbolTable(), oldSymbolTable);
+        }
+        FileUtils.writeLines(outputs.intermediateCode(), intermediateCode);
+        FileUtils.writeLines(outputs.parserList(), parserList);
+        FileUtils.writeLines(outputs.newSymbolTable(), newSymbolTable);
+        FileUtils.writeFile(outputs.emulateResult(), emulateResult);
+        FileUtils.writeLines(outputs.assembly(), assembly);
+        if (metrics != null) {
+            FileUtils.writeLines(outputs.metrics(), metrics.toJson());
+        }
+    }
+}
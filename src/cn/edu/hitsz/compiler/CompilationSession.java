@@ -0,0 +1,78 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.ir.IRVariableTable;
+import cn.edu.hitsz.compiler.ir.TempAllocator;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+/**
+ * 一次编译的上下文
+ * <br>
+ * 一次编译用到的状态分为两部分:
+ * <ul>
+ *     <li>词法单元类型, 语法与 LR 分析表: 在进程内只读取一次, 之后只读, 由所有会话共享.
+ *     词法单元类型由 {@link TokenKind} 静态地提供, 会话只负责确保它已被读取;</li>
+ *     <li>符号表, 具名 IR 变量表与临时变量分配器: 属于本次编译, 每个会话各有一份.</li>
+ * </ul>
+ * 因此会话可以在同一个进程中反复创建, 不同的会话也可以在不同线程上同时使用; 但同一个会话只应在一个线程上使用.
+ *
+ * @author hogan
+ */
+public final class CompilationSession {
+    /**
+     * 开始一次新的编译, 必要时先读取码点文件与语法文件
+     *
+     * @param lrTable 所有编译共享的分析表
+     * @return 新的会话
+     */
+    public static CompilationSession create(ParseTable lrTable) {
+        TokenKind.loadTokenKinds();
+        return new CompilationSession(GrammarInfo.get(), lrTable);
+    }
+
+    public GrammarInfo grammar() {
+        return grammar;
+    }
+
+    public ParseTable lrTable() {
+        return lrTable;
+    }
+
+    /**
+     * @return 本次编译的符号表
+     */
+    public SymbolTable symbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * @return 本次编译的具名 IR 变量表, 变量编号只在本次编译内有效
+     */
+    public IRVariableTable variables() {
+        return variables;
+    }
+
+    /**
+     * @return 本次编译的临时变量分配器, IR 生成与汇编生成共用
+     */
+    public TempAllocator temps() {
+        return temps;
+    }
+
+    private CompilationSession(GrammarInfo grammar, ParseTable lrTable) {
+        this.grammar = grammar;
+        this.lrTable = lrTable;
+        this.symbolTable = new SymbolTable();
+        this.variables = new IRVariableTable();
+        this.temps = new TempAllocator();
+    }
+
+    private final GrammarInfo grammar;
+    private final ParseTable lrTable;
+
+    private final SymbolTable symbolTable;
+    private final IRVariableTable variables;
+    private final TempAllocator temps;
+}
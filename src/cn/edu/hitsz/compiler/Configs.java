@@ -9,5 +9,46 @@ public class Configs {
     public static final String OVERRIDE_INPUT_CODE = "data/in/reg-alloc.txt";
     public static final boolean DEBUG = true;
     public static final int FILE_READER_BUFFER_SIZE = 4;
+    public static final boolean LEXER_RING_BUFFER = true;
+    public static final boolean LEXER_NIO_SOURCE = true;
+    /**
+     * 使用由 lexer_spec.txt 编译出的 DFA 做词法分析, 否则使用手写的自动机. 两者识别出的 token 相同
+     * <br>
+     * 原先的手写自动机只保留整数常量的第一位数字 (75 被识别为 7), 该问题已修正, 所以多位整数常量的 token, IR 与运行结果都与最初的实现不同
+     */
+    public static final boolean LEXER_TABLE_DRIVEN = true;
+    /**
+     * 运行时以 -Dcompiler.trace.lexer=true 打开词法分析的跟踪输出
+     */
+    public static final boolean LEXER_TRACE = Boolean.getBoolean("compiler.trace.lexer");
+    public static final boolean LEXER_STREAM_TOKENS = false;
+    /**
+     * 运行时以 -Dcompiler.trace.parser=true 打开语法分析的跟踪输出
+     */
+    public static final boolean PARSER_TRACE = Boolean.getBoolean("compiler.trace.parser");
+    public static final boolean USE_LR_TABLE_CACHE = true;
+    public static final boolean PARSER_COMPRESSED_TABLE = false;
+    public static final int PARSER_EVENT_BATCH_SIZE = 1024;
+    public static final boolean PARSER_ASYNC_COLLECTOR = false;
+    public static final boolean PARSER_FUSED_OBSERVER = false;
+    /**
+     * IR 生成时把指令存放在紧凑的 {@link cn.edu.hitsz.compiler.ir.InstructionBuffer} 中, 而不是逐条分配的 Instruction 对象
+     */
+    public static final boolean IR_COMPACT = true;
+    /**
+     * 批量编译的工作线程数, 运行时以 -Dcompiler.batch.threads=N 指定
+     */
+    public static final int BATCH_THREADS =
+        Integer.getInteger("compiler.batch.threads", Runtime.getRuntime().availableProcessors());
+    /**
+     * 服务器模式启动时编译示例程序的次数
+     */
+    public static final int SERVER_WARM_UP_ITERATIONS = 2000;
+    /**
+     * 是否记录各阶段的耗时, 分配与计数并写出 {@link cn.edu.hitsz.compiler.utils.FilePathConfig#METRICS_PATH},
+     * 运行时以 -Dcompiler.metrics=false 关闭
+     */
+    public static final boolean COLLECT_METRICS =
+        Boolean.parseBoolean(System.getProperty("compiler.metrics", "true"));
     public static final int REGS_BUFFER_BASE = 0x100;
 }
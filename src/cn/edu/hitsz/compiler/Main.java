@@ -1,38 +1,50 @@
 package cn.edu.hitsz.compiler;
 
-import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
-import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
-import cn.edu.hitsz.compiler.parser.IRGenerator;
-import cn.edu.hitsz.compiler.parser.ProductionCollector;
-import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
-import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
-import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.CompressedLRTable;
+import cn.edu.hitsz.compiler.parser.table.LRTableCache;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
 import cn.edu.hitsz.compiler.parser.table.TableLoader;
-import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.server.CompileServer;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
-import cn.edu.hitsz.compiler.utils.FileUtils;
-import cn.edu.hitsz.compiler.utils.IREmulator;
 
-import java.util.Objects;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 
 public class Main {
+    /**
+     * 不带参数时编译 {@link FilePathConfig#SRC_CODE_PATH};
+     * 参数为 {@code --server} 时在标准输入输出上以服务器模式运行, 为 {@code --socket <path>} 时在 Unix domain socket 上运行,
+     * 见 {@link CompileServer};
+     * 其它情况下把每个参数当作源文件或目录进行批量编译, 输出到 {@link FilePathConfig#BATCH_OUTPUT_DIR}, 此时各阶段的调试输出被丢弃
+     *
+     * @param args 命令行参数
+     */
     public static void main(String[] args) {
-        // 构建符号表以供各部分使用
+        // 读取分析表时需要词法单元类型, 之后它们在所有编译之间只读共享
         TokenKind.loadTokenKinds();
-        final var symbolTable = new SymbolTable();
+        final var lrTable = loadLRTable();
 
-        // 词法分析
-        final var lexer = new LexicalAnalyzer(symbolTable);
-        lexer.loadFile(FilePathConfig.SRC_CODE_PATH);
-        lexer.run();
-        lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
-        final var tokens = lexer.getTokens();
-        symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
+        if (args.length == 0) {
+            new CompilationPipeline(lrTable).compile(FilePathConfig.SRC_CODE_PATH, CompilationOutputs.defaults());
+        } else if (args[0].equals("--server") || args[0].equals("--socket")) {
+            serve(lrTable, args);
+        } else {
+            compileBatch(lrTable, args);
+        }
+    }
 
-        // 读取第三方程序构造的 LR 分析表
-        final var tableLoader = new TableLoader();
-        final var lrTable = tableLoader.load(FilePathConfig.LR1_TABLE_PATH);
+    private static ParseTable loadLRTable() {
+        // 读取第三方程序构造的 LR 分析表, 启用缓存时优先使用上次运行写下的二进制表
+        final CompiledLRTable lrTable;
+        if (Configs.USE_LR_TABLE_CACHE) {
+            lrTable = LRTableCache.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR_TABLE_CACHE_PATH);
+        } else {
+            final var tableLoader = new TableLoader();
+            lrTable = CompiledLRTable.compile(tableLoader.load(FilePathConfig.LR1_TABLE_PATH));
+        }
 
         // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表
         // final var tableGenerator = new TableGenerator();
@@ -40,40 +52,48 @@ public class Main {
         // final var lrTable = tableGenerator.getTable();
         // lrTable.dumpTable("data/out/lrTable.csv");
 
-        // 加载 LR 分析驱动程序
-        final var parser = new SyntaxAnalyzer(symbolTable);
-        parser.loadTokens(tokens);
-        parser.loadLRTable(lrTable);
-
-        // 加入生成规约列表的 Observer
-        final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
-        parser.registerObserver(productionCollector);
-
-        // 加入用作语义检查的 Observer
-        final var semanticAnalyzer = new SemanticAnalyzer();
-        parser.registerObserver(semanticAnalyzer);
+        return Configs.PARSER_COMPRESSED_TABLE ? CompressedLRTable.compress(lrTable) : lrTable;
+    }
 
-        // 加入用作 IR 生成的 Observer
-        final var irGenerator = new IRGenerator();
-        parser.registerObserver(irGenerator);
+    private static void serve(ParseTable lrTable, String[] args) {
+        final var stdout = CompileServer.detachStandardOutput();
+        final var server = new CompileServer(new CompilationPipeline(lrTable));
+        final var start = System.nanoTime();
+        server.warmUp(Configs.SERVER_WARM_UP_ITERATIONS);
+        System.err.printf("Warmed up in %d ms%n", (System.nanoTime() - start) / 1_000_000);
 
-        // 执行语法解析并在解析过程中依次调用各 Observer
-        parser.run();
+        try {
+            if (args[0].equals("--socket")) {
+                if (args.length < 2) {
+                    throw new RuntimeException("Missing socket path after --socket");
+                }
+                server.serveUnixSocket(Path.of(args[1]));
+            } else {
+                server.serveStdio(stdout);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-        // 各 Observer 输出结果
-        productionCollector.dumpToFile(FilePathConfig.PARSER_PATH);
-        symbolTable.dumpTable(FilePathConfig.NEW_SYMBOL_TABLE);
-        final var instructions = irGenerator.getIR();
-        irGenerator.dumpIR(FilePathConfig.INTERMEDIATE_CODE_PATH);
+    private static void compileBatch(ParseTable lrTable, String[] paths) {
+        // 与服务器模式相同, 丢弃各阶段的调试输出, 否则多个工作线程的输出会交错在一起淹没汇总信息
+        final var stdout = CompileServer.detachStandardOutput();
+        final var compiler = new BatchCompiler(lrTable, Path.of(FilePathConfig.BATCH_OUTPUT_DIR), Configs.BATCH_THREADS);
+        final var sources = compiler.collect(Arrays.asList(paths));
 
-        // 模拟执行 IR 并输出结果
-        final var emulator = IREmulator.load(instructions);
-        FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, emulator.execute().map(Objects::toString).orElse("No return value"));
+        final var start = System.nanoTime();
+        final var results = compiler.compile(sources);
+        final var elapsed = System.nanoTime() - start;
 
-        // 由 IR 生成汇编
-        final var asmGenerator = new AssemblyGenerator();
-        asmGenerator.loadIR(instructions);
-        asmGenerator.run();
-        asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
+        var failed = 0;
+        for (final var result : results) {
+            if (!result.succeeded()) {
+                failed++;
+                System.err.printf("FAILED %s: %s%n", result.source().source(), result.failure());
+            }
+        }
+        stdout.printf("Compiled %d files in %d ms on %d threads, %d failed%n",
+            results.size(), elapsed / 1_000_000, Configs.BATCH_THREADS, failed);
     }
 }
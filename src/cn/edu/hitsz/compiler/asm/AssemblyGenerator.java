@@ -4,9 +4,14 @@ import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.IRVariableIntMap;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.TempAllocator;
+import cn.edu.hitsz.compiler.jfr.SpillEvent;
+import cn.edu.hitsz.compiler.jfr.StageEvent;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -50,40 +55,76 @@ public class AssemblyGenerator {
     *
     * */
     LinkedList<String> asLines=new LinkedList<>();
-    LinkedList<Instruction> instructions=new LinkedList<>();
+    List<Instruction> instructions=new ArrayList<>();
+    private final TempAllocator temps;
+    /**
+     * 找不到空闲寄存器, 本应把某个变量溢出到内存的次数
+     */
+    private int spillCount = 0;
+
+    /**
+     * @param temps 本次编译的临时变量分配器, 应与生成 IR 时使用的相同, 以免新建的临时变量与 IR 中已有的重名
+     */
+    public AssemblyGenerator(TempAllocator temps) {
+        this.temps = temps;
+    }
 
     //    enum Regs{t0,t1,t2,t3,t4,t5,t6}
     enum Regs{t4,t5,t6,t0,t1,t2,t3}
     class RegisterAllocation{
-        private LinkedList<IRVariable> irvars;
-        private LinkedList<Regs> regs;
-        private RegisterAllocation(){
-            irvars=new LinkedList<>();
-            regs=new LinkedList<>();
-            for(Regs r:Regs.values()){
-                irvars.add(null);   regs.add(r);
-            }
+        /**
+         * 第 i 个寄存器 regs[i] 中保存的变量 irvars[i], 以及反过来由变量编号找到其所在寄存器下标的 slotOf
+         */
+        private final IRVariable[] irvars;
+        private final Regs[] regs;
+        private final IRVariableIntMap slotOf = new IRVariableIntMap();
+        /**
+         * 已生成代码的指令中提到过的变量, 在它最近一次被提到之后是否还会被读取 (1 为是)
+         */
+        private final IRVariableIntMap live = new IRVariableIntMap();
+        private final Liveness liveness;
+        private RegisterAllocation(Liveness liveness){
+            regs=Regs.values();
+            irvars=new IRVariable[regs.length];
+            this.liveness=liveness;
         }
         /**
          * 给寄存器newReg以新的ir变量newIrv
          * */
         public void reAllocate(Regs newReg,IRVariable newIrv){
             for(int i=0;i<7;i++){
-                if(regs.get(i).equals(newReg)){
-                    irvars.set(i,newIrv);
+                if(regs[i].equals(newReg)){
+                    set(i,newIrv);
                 }
             }
         }
+
+        private void set(int slot,IRVariable irv){
+            if(irvars[slot]!=null){
+                slotOf.remove(irvars[slot]);
+            }
+            irvars[slot]=irv;
+            if(irv!=null){
+                slotOf.put(irv,slot);
+            }
+        }
         /**
          * 找到一个空的寄存器。若没有空的则返回null或报错
          * */
         public Regs findFreeReg(int currLine){
             CheckFreeArgs(currLine);
             for(int i=0;i<7;i++){
-                if(irvars.get(i)==null){
-                    return regs.get(i);
+                if(irvars[i]==null){
+                    return regs[i];
                 }
             }
+            spillCount++;
+            final var event = new SpillEvent();
+            if (event.shouldCommit()) {
+                event.line = currLine;
+                event.instruction = instructions.get(currLine).toString();
+                event.commit();
+            }
             return null;
         }
 
@@ -93,82 +134,47 @@ public class AssemblyGenerator {
          * 是否在from/lhs/rhs出现过？
          * 是->还有用
          * 否->没用了
+         * <br>
+         * 寄存器中的变量都已在前面的指令中出现过, 它最近一次出现之后是否还会被读取由 {@link Liveness} 预先算出, 见 {@link #passLine(int)}
          * */
         private void CheckFreeArgs(int currLine) {
             for(int i=0;i<7;i++){
-                Regs regToCheck=regs.get(i);
-                boolean free=true,needExplore=true;
-
-                for(int j=currLine;j<instructions.size();j++){
-                    if(!free || !needExplore){break;}
-                    Instruction instr=instructions.get(j);
-                    if(instr.getKind()==RET){
-                        //既然都读到return了那就啥也不用干
-
-                    }else if(instr.getKind()==MOV){
-                        if(ifInReg(instr.getResult())){
-                            if(regToCheck.equals(findGiven((IRVariable) instr.getResult()))){
-                                //没用
-                                needExplore=false;
-                            }
-                        }
-                        if(instr.getFrom().isImmediate())continue;
-                        if(ifInReg((IRVariable) instr.getFrom())){
-                            if(regToCheck.equals(findGiven((IRVariable) instr.getFrom()))){
-                                //有用
-                                free=false;
-                            }
-                        }
-                    }else{
-                        if(ifInReg(instr.getResult())){
-                            if(regToCheck.equals(findGiven((IRVariable) instr.getResult()))){
-                                //没用
-                                needExplore=false;
-                            }
-                        }
-                        if(instr.getLHS().isImmediate())continue;
-                        if(ifInReg((IRVariable) instr.getLHS())){
-                            if(regToCheck.equals(findGiven((IRVariable) instr.getLHS()))){
-                                //有用
-                                free=false;
-                            }
-                        }
-                        if(instr.getRHS().isImmediate())continue;
-                        if(ifInReg((IRVariable) instr.getRHS())){
-                            if(regToCheck.equals(findGiven((IRVariable) instr.getRHS()))){
-                                //有用
-                                free=false;
-                            }
-                        }
-
-
-                    }
-                }
-                if(free){
-                    irvars.set(i,null);
+                if(irvars[i]!=null && live.getOrDefault(irvars[i],0)==0){
+                    set(i,null);
                 }
             }
         }
 
+        /**
+         * 第 line 条指令的代码生成完毕, 记下它提到的变量在这之后是否还会被读取
+         * */
+        private void passLine(int line){
+            Instruction instr=instructions.get(line);
+            if(instr.getKind()==RET){
+                return;
+            }
+            live.put(instr.getResult(),liveness.isResultLiveAfter(line)?1:0);
+            IRValue first=instr.getKind()==MOV?instr.getFrom():instr.getLHS();
+            if(first instanceof IRVariable irv){
+                live.put(irv,liveness.isFirstLiveAfter(line)?1:0);
+            }
+            if(instr.getKind()!=MOV && instr.getRHS() instanceof IRVariable irv){
+                live.put(irv,liveness.isSecondLiveAfter(line)?1:0);
+            }
+        }
+
         /**
          * ir变量irv是否在寄存器中
          * */
         public boolean ifInReg(IRVariable irv){
-            for(int i=0;i<7;i++){
-                if(irv.equals(irvars.get(i))){
-                    return true;
-                }
-            }
-            return false;
+            return slotOf.containsKey(irv);
         }
         /**
          * irv保存在哪个寄存器中
          * */
         public Regs findGiven(IRVariable irv){
-            for(int i=0;i<7;i++){
-                if(irv.equals(irvars.get(i))){
-                    return regs.get(i);
-                }
+            if(slotOf.containsKey(irv)){
+                return regs[slotOf.get(irv)];
             }
             return null;
         }
@@ -187,31 +193,27 @@ public class AssemblyGenerator {
      */
     public void loadIR(List<Instruction> originInstructions) {
         // 读入前端提供的中间代码并生成所需要的信息
-        instructions= (LinkedList<Instruction>) originInstructions;
         int maxTempUsed=0;
-        for(int i=0;i<instructions.size();i++){
-            Instruction instr=instructions.get(i);
+        for(Instruction instr:originInstructions){
             if(instr.getKind()!=RET){
                 IRVariable irv=instr.getResult();
-                if(irv.toString().matches("\\$[0-9]+")){
-                    int par=Integer.parseInt(irv.toString().substring(1));
-                    maxTempUsed= Math.max(par, maxTempUsed);
+                if(irv.isTemp()){
+                    maxTempUsed= Math.max(irv.tempIndex(), maxTempUsed);
                 }
             }
         }
-        System.out.println(maxTempUsed);
         //对于加法减法乘法，如果左操作数是立即数，要新建一个irvalue储存这个立即数
         //比如(SUB, $0, 3, a)
         //要拆成(MOV, $6, 3) (SUB, $0, $6, a)
-        for(int i=0;i<instructions.size();i++){
-            Instruction instr=instructions.get(i);
+        instructions=new ArrayList<>(originInstructions.size());
+        for(Instruction instr:originInstructions){
             if(instr.getKind()==ADD ||
                     instr.getKind()==SUB ||
                     instr.getKind()==MUL
             ){
                 IRValue left=instr.getLHS();
                 if(left.isImmediate()){
-                    IRVariable temp= IRVariable.temp();
+                    IRVariable temp= temps.newTemp();
                     IRVariable result= instr.getResult();
                     IRValue rhs= instr.getRHS();
 
@@ -221,12 +223,12 @@ public class AssemblyGenerator {
                                     instr.getKind()==SUB ? Instruction.createSub(result,temp,rhs):
                                             instr.getKind()==MUL ? Instruction.createMul(result,temp,rhs):null;
 
-                    instructions.remove(i);
-                    instructions.add(i,ins1);
-                    instructions.add(i+1,ins2);
-
+                    instructions.add(ins1);
+                    instructions.add(ins2);
+                    continue;
                 }
             }
+            instructions.add(instr);
         }
 
     }
@@ -243,8 +245,10 @@ public class AssemblyGenerator {
      */
     public void run() {
         // 执行寄存器分配与代码生成
+        final var event = new StageEvent();
+        event.begin();
         asLines.add(".text\n");
-        RegisterAllocation rAlloc=new RegisterAllocation();
+        RegisterAllocation rAlloc=new RegisterAllocation(Liveness.analyze(instructions));
 
         int len=instructions.size();
         Instruction instr;
@@ -322,7 +326,6 @@ public class AssemblyGenerator {
                 case MOV -> {
                     IRValue from= instr.getFrom();
                     IRVariable result= instr.getResult();
-                    System.out.println(instr);
                     //找寄存器。如果没有对应该irvalue的寄存器，就给一个新的。
                     Regs regResult;
                     if(rAlloc.ifInReg(result)){
@@ -352,9 +355,31 @@ public class AssemblyGenerator {
 
                 }
             }
+            rAlloc.passLine(currLine);
         }
+        if (event.shouldCommit()) {
+            event.stage = StageEvent.CODEGEN;
+            event.items = asLines.size();
+            event.commit();
+        }
+    }
+
+
+    /**
+     * 目前的寄存器分配不会溢出, 找不到空闲寄存器时生成的代码是错误的, 该计数可以用来发现这种情况
+     *
+     * @return 寄存器分配时找不到空闲寄存器的次数
+     */
+    public int getSpillCount() {
+        return spillCount;
     }
 
+    /**
+     * @return 生成的汇编代码的各行, 与 {@link #dump(String)} 写入文件的内容相同
+     */
+    public List<String> getAssembly() {
+        return List.copyOf(asLines);
+    }
 
     /**
      * 输出汇编代码到文件
@@ -363,7 +388,6 @@ public class AssemblyGenerator {
      */
     public void dump(String path) {
         // 输出汇编代码到文件
-        System.out.println(asLines);
         FileUtils.writeLines(path,asLines);
     }
 }
@@ -0,0 +1,102 @@
+package cn.edu.hitsz.compiler.asm;
+
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.IRVariableIntMap;
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.util.List;
+
+import static cn.edu.hitsz.compiler.ir.InstructionKind.MOV;
+import static cn.edu.hitsz.compiler.ir.InstructionKind.RET;
+
+/**
+ * 寄存器分配用到的活跃变量信息
+ * <br>
+ * IR 是没有跳转的直线代码, 从最后一条指令向前扫描一遍, 就能知道每条指令执行之后, 它提到的各个变量在被重新赋值之前还会不会被读取.
+ * 寄存器分配按顺序生成代码时记下每个变量最近一次被提到时的结果, 就能在 O(1) 内判断寄存器中的变量是否已经没用了.
+ * <br>
+ * 读取的判断与原先逐条向后扫描时相同: RET 中的读取不计入; 左操作数为立即数的运算不检查右操作数 (loadIR 之后不会再有这样的指令);
+ * 同一条指令既读取又重新赋值某个变量时, 该变量在这条指令之前仍是活跃的.
+ *
+ * @author hogan
+ */
+final class Liveness {
+    private static final int RESULT = 1;
+    private static final int FIRST = 1 << 1;
+    private static final int SECOND = 1 << 2;
+
+    /**
+     * 第 i 条指令执行之后, 其结果与两个操作数中的变量是否仍活跃, 各占一位
+     */
+    private final byte[] liveOut;
+
+    private Liveness(byte[] liveOut) {
+        this.liveOut = liveOut;
+    }
+
+    /**
+     * @param instructions 经 loadIR 调整后的中间代码, 应支持随机访问
+     * @return 每条指令之后的活跃信息
+     */
+    static Liveness analyze(List<Instruction> instructions) {
+        final var liveOut = new byte[instructions.size()];
+        // 从当前位置向后看, 变量的下一次出现是读取 (1) 还是赋值 (0), 之后不再出现的变量不在表中
+        final var next = new IRVariableIntMap();
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            final var instr = instructions.get(i);
+            if (instr.getKind() == RET) {
+                continue;
+            }
+            final var result = instr.getResult();
+            final var first = instr.getKind() == MOV ? instr.getFrom() : instr.getLHS();
+            final var second = instr.getKind() == MOV ? null : instr.getRHS();
+
+            var bits = 0;
+            if (isRead(next, result)) {
+                bits |= RESULT;
+            }
+            if (isRead(next, first)) {
+                bits |= FIRST;
+            }
+            if (second != null && isRead(next, second)) {
+                bits |= SECOND;
+            }
+            liveOut[i] = (byte) bits;
+
+            next.put(result, 0);
+            if (first instanceof IRVariable variable) {
+                next.put(variable, 1);
+                if (second instanceof IRVariable other) {
+                    next.put(other, 1);
+                }
+            }
+        }
+        return new Liveness(liveOut);
+    }
+
+    private static boolean isRead(IRVariableIntMap next, IRValue value) {
+        return value instanceof IRVariable variable && next.getOrDefault(variable, 0) == 1;
+    }
+
+    /**
+     * @return 第 line 条指令的结果在该指令之后是否还会被读取
+     */
+    boolean isResultLiveAfter(int line) {
+        return (liveOut[line] & RESULT) != 0;
+    }
+
+    /**
+     * @return 第 line 条指令的第一个操作数 (运算的 lhs, MOV 的 from) 在该指令之后是否还会被读取, 立即数为 false
+     */
+    boolean isFirstLiveAfter(int line) {
+        return (liveOut[line] & FIRST) != 0;
+    }
+
+    /**
+     * @return 第 line 条运算指令的 rhs 在该指令之后是否还会被读取, 立即数为 false
+     */
+    boolean isSecondLiveAfter(int line) {
+        return (liveOut[line] & SECOND) != 0;
+    }
+}
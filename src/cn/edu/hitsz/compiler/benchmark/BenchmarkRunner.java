@@ -0,0 +1,106 @@
+package cn.edu.hitsz.compiler.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * 简易的微基准测试框架
+ * <br>
+ * 每个基准先运行若干轮预热让 JIT 编译热点代码, 再运行若干轮测量. 每一轮在给定的时间内反复执行被测操作, 记录次数, 耗时,
+ * 以及当前线程分配的字节数 (由 {@link com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()} 给出).
+ * 被测操作的返回值会被写入一个 volatile 字段, 防止 JIT 把整个操作当作死代码消除.
+ * <br>
+ * 分配字节数只统计调用线程, 后台线程 (如异步观察者) 上的分配不计入.
+ *
+ * @author hogan
+ */
+public final class BenchmarkRunner {
+    /**
+     * 一个基准的测量结果
+     *
+     * @param name        基准名
+     * @param param       参数 (如输入规模)
+     * @param ops         测量阶段执行的总次数
+     * @param opsPerSec   各测量轮的平均吞吐量
+     * @param opsError    各测量轮吞吐量的标准差
+     * @param bytesPerOp  每次操作平均分配的字节数
+     * @param allocPerSec 每秒分配的字节数
+     */
+    public record Result(String name, String param, long ops, double opsPerSec, double opsError,
+                         double bytesPerOp, double allocPerSec) {
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile Object sink;
+
+    private final int warmUpIterations;
+    private final int measureIterations;
+    private final long iterationNanos;
+
+    /**
+     * @param warmUpIterations  预热轮数
+     * @param measureIterations 测量轮数
+     * @param iterationMillis   每轮的时长
+     */
+    public BenchmarkRunner(int warmUpIterations, int measureIterations, long iterationMillis) {
+        this.warmUpIterations = warmUpIterations;
+        this.measureIterations = measureIterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * 运行一个基准
+     *
+     * @param name      基准名
+     * @param param     参数
+     * @param operation 被测操作
+     * @return 测量结果
+     */
+    public Result run(String name, String param, Supplier<?> operation) {
+        for (int i = 0; i < warmUpIterations; i++) {
+            iteration(operation);
+        }
+
+        final var throughputs = new double[measureIterations];
+        long ops = 0;
+        long nanos = 0;
+        long bytes = 0;
+        for (int i = 0; i < measureIterations; i++) {
+            final var iteration = iteration(operation);
+            throughputs[i] = iteration[0] * 1e9 / iteration[1];
+            ops += iteration[0];
+            nanos += iteration[1];
+            bytes += iteration[2];
+        }
+
+        var mean = 0.0;
+        for (final var throughput : throughputs) {
+            mean += throughput / measureIterations;
+        }
+        var variance = 0.0;
+        for (final var throughput : throughputs) {
+            variance += (throughput - mean) * (throughput - mean) / Math.max(1, measureIterations - 1);
+        }
+        return new Result(name, param, ops, mean, Math.sqrt(variance), (double) bytes / ops, bytes * 1e9 / nanos);
+    }
+
+    /**
+     * @return {次数, 耗时 (纳秒), 分配字节数}
+     */
+    private long[] iteration(Supplier<?> operation) {
+        final var startBytes = THREADS.getCurrentThreadAllocatedBytes();
+        final var start = System.nanoTime();
+        long ops = 0;
+        long elapsed;
+        do {
+            sink = operation.get();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        final var bytes = THREADS.getCurrentThreadAllocatedBytes() - startBytes;
+        return new long[]{ops, elapsed, bytes};
+    }
+}
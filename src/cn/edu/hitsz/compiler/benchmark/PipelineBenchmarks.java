@@ -0,0 +1,315 @@
+package cn.edu.hitsz.compiler.benchmark;
+
+import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.ir.IRVariableTable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.TempAllocator;
+import cn.edu.hitsz.compiler.lexer.CharacterSource;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTableCache;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * 编译器各阶段的基准测试
+ * <br>
+ * 输入默认由 data/in/reg-alloc.txt 放大而来: 保留开头的声明与末尾的 return 语句, 把中间的赋值语句重复到给定的大小;
+ * 也可以改用 {@link ProgramGenerator} 生成的某种结构的程序.
+ * 各阶段分别测量:
+ * <ul>
+ *     <li>lexer: 对内存中的源代码执行 {@link LexicalAnalyzer#run()}</li>
+ *     <li>parser: 只做语法分析, 不注册观察者</li>
+ *     <li>parser+observers: 语法分析, 同时注册规约收集, 语义分析与 IR 生成的观察者</li>
+ *     <li>emulator: {@link IREmulator#load(List)} 译码与 {@link IREmulator#execute()}</li>
+ *     <li>emulator-execute: 只执行已译码的 IR</li>
+ *     <li>ir-getters: 遍历一遍 IR, 按指令种类调用 {@link Instruction} 的各个 getter, 正常情况下不应分配内存</li>
+ *     <li>codegen: {@link AssemblyGenerator#loadIR(List)} 与 {@link AssemblyGenerator#run()}</li>
+ *     <li>table-*: 以三种方式由 grammar.txt 构造 LR 分析表, 不写出项目集族; 带 -parallel 后缀的在公共 ForkJoinPool 上并行构造</li>
+ * </ul>
+ * 需要在项目根目录下运行, 可用的系统属性:
+ * <pre>
+ * -Dbench.sizes=1K,64K,1M     输入规模, 可用 K 与 M 后缀, 如 100M
+ * -Dbench.input=reg-alloc     输入程序, 或 {@link ProgramGenerator.Shape} 之一 (mixed, deep, chain, wide)
+ * -Dbench.filter=lexer|parser 只运行名字匹配该正则的基准
+ * -Dbench.warmup=5            预热轮数
+ * -Dbench.iterations=5        测量轮数
+ * -Dbench.time=500            每轮时长 (毫秒)
+ * -Dbench.csv=path            另将结果写为 CSV
+ * </pre>
+ * 各阶段自身的调试输出在运行期间被丢弃.
+ *
+ * @author hogan
+ */
+public final class PipelineBenchmarks {
+    private record Case(String name, String param, long inputBytes, Supplier<?> operation) {
+    }
+
+    /**
+     * 每个输入规模上运行的基准, 与 {@link #cases(int, IntFunction, ParseTable)} 中的顺序一致
+     */
+    private static final List<String> SIZED_CASES = List.of(
+        "lexer", "parser", "parser+observers", "emulator", "emulator-execute", "ir-getters", "codegen");
+
+    private final Pattern filter;
+    private final BenchmarkRunner runner;
+    private final PrintStream out;
+    private final List<BenchmarkRunner.Result> results = new ArrayList<>();
+    private final List<Long> inputBytes = new ArrayList<>();
+
+    public static void main(String[] args) {
+        final var sizes = parseSizes(System.getProperty("bench.sizes", "1K,64K,1M"));
+        final var filter = Pattern.compile(System.getProperty("bench.filter", ".*"));
+        final var runner = new BenchmarkRunner(
+            Integer.getInteger("bench.warmup", 5),
+            Integer.getInteger("bench.iterations", 5),
+            Integer.getInteger("bench.time", 500));
+
+        final var out = System.out;
+        System.setOut(new PrintStream(PrintStream.nullOutputStream()));
+
+        TokenKind.loadTokenKinds();
+        final var lrTable = LRTableCache.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR_TABLE_CACHE_PATH);
+        final var input = System.getProperty("bench.input", "reg-alloc");
+        final IntFunction<String> programs;
+        if (input.equals("reg-alloc")) {
+            final var template = FileUtils.readFile("data/in/reg-alloc.txt");
+            programs = size -> scale(template, size);
+        } else {
+            final var shape = ProgramGenerator.Shape.valueOf(input.toUpperCase(Locale.ROOT));
+            programs = size -> new ProgramGenerator(0).generate(shape, size).code();
+        }
+
+        out.printf("%-20s %8s %14s %10s %12s %14s %12s%n",
+            "benchmark", "size", "ops/s", "error", "MB/s", "alloc B/op", "alloc MB/s");
+        final var benchmarks = new PipelineBenchmarks(filter, runner, out);
+        // 每个规模的输入 (源代码, token, IR 等) 在运行该规模之前才构造, 运行完即可回收,
+        // 以免大规模的输入在整个运行期间常驻, 拖慢其它规模并影响它们的测量
+        for (final var size : sizes) {
+            benchmarks.runSize(size, programs, lrTable);
+        }
+        benchmarks.run(tableCases());
+        benchmarks.writeCsv(System.getProperty("bench.csv"));
+    }
+
+    private void runSize(int size, IntFunction<String> programs, ParseTable lrTable) {
+        if (SIZED_CASES.stream().noneMatch(name -> filter.matcher(name).matches())) {
+            return;
+        }
+        run(cases(size, programs, lrTable));
+        System.gc();
+    }
+
+    private void run(List<Case> cases) {
+        for (final var benchmark : cases) {
+            if (!filter.matcher(benchmark.name()).matches()) {
+                continue;
+            }
+            final var result = runner.run(benchmark.name(), benchmark.param(), benchmark.operation());
+            results.add(result);
+            inputBytes.add(benchmark.inputBytes());
+            out.printf("%-20s %8s %14.2f %10.2f %12.2f %14.0f %12.2f%n",
+                result.name(), result.param(), result.opsPerSec(), result.opsError(),
+                result.opsPerSec() * benchmark.inputBytes() / 1e6, result.bytesPerOp(), result.allocPerSec() / 1e6);
+        }
+    }
+
+    private void writeCsv(String csv) {
+        if (csv != null) {
+            final var lines = new ArrayList<String>();
+            lines.add("benchmark,size,input_bytes,ops,ops_per_sec,ops_error,alloc_bytes_per_op,alloc_bytes_per_sec");
+            for (int i = 0; i < results.size(); i++) {
+                final var result = results.get(i);
+                lines.add("%s,%s,%d,%d,%.4f,%.4f,%.1f,%.1f".formatted(result.name(), result.param(), inputBytes.get(i),
+                    result.ops(), result.opsPerSec(), result.opsError(), result.bytesPerOp(), result.allocPerSec()));
+            }
+            FileUtils.writeLines(csv, lines);
+        }
+    }
+
+    /**
+     * @return 规模为 size 的输入上的各个基准, 它们共享预先算好的输入
+     */
+    private static List<Case> cases(int size, IntFunction<String> programs, ParseTable lrTable) {
+        final var cases = new ArrayList<Case>();
+        final var param = formatSize(size);
+        final var code = programs.apply(size);
+        final var bytes = (long) code.length();
+
+        // 以下各阶段的输入都由上一阶段预先算好, 只测量该阶段本身
+        // 语义分析会为符号表条目设置类型, 每次分析都要使用新的符号表
+        final var tokens = lex(code, new SymbolTable());
+        final var temps = new TempAllocator();
+        final var instructions = generateIR(tokens, symbolsOf(tokens), lrTable, temps);
+        final var tempCount = temps.count();
+
+        cases.add(new Case("lexer", param, bytes, () -> lex(code, new SymbolTable())));
+        cases.add(new Case("parser", param, bytes, () -> {
+            final var parser = new SyntaxAnalyzer(new SymbolTable());
+            parser.loadTokens(tokens);
+            parser.loadLRTable(lrTable);
+            parser.run();
+            return parser;
+        }));
+        cases.add(new Case("parser+observers", param, bytes,
+            () -> generateIR(tokens, symbolsOf(tokens), lrTable, new TempAllocator())));
+        cases.add(new Case("emulator", param, bytes, () -> IREmulator.load(instructions).execute()));
+        final var emulator = IREmulator.load(instructions);
+        cases.add(new Case("emulator-execute", param, bytes, emulator::execute));
+        final var materialized = new ArrayList<>(instructions);
+        cases.add(new Case("ir-getters", param, bytes, () -> visitOperands(materialized)));
+        cases.add(new Case("codegen", param, bytes, () -> {
+            final var generator = new AssemblyGenerator(new TempAllocator(tempCount));
+            generator.loadIR(instructions);
+            generator.run();
+            return generator;
+        }));
+        return cases;
+    }
+
+    private static List<Case> tableCases() {
+        final var cases = new ArrayList<Case>();
+        final var grammarBytes = (long) FileUtils.readFile(FilePathConfig.GRAMMAR_PATH).length();
+        // 只测量构造本身, 不写出 items.txt
+        for (final var mode : TableGenerator.Mode.values()) {
+            final var name = "table-" + mode.name().toLowerCase();
+            cases.add(new Case(name, "grammar", grammarBytes, () -> {
+                final var generator = new TableGenerator(mode);
+                generator.construct();
+                return generator.getTable();
+            }));
+            cases.add(new Case(name + "-parallel", "grammar", grammarBytes, () -> {
+                final var generator = new TableGenerator(mode, ForkJoinPool.commonPool());
+                generator.construct();
+                return generator.getTable();
+            }));
+        }
+        return cases;
+    }
+
+    /**
+     * 以后端各趟遍历 IR 的方式读取每条指令的结果与操作数
+     *
+     * @return 变量操作数的个数
+     */
+    private static int visitOperands(List<Instruction> instructions) {
+        var variables = 0;
+        for (final var instruction : instructions) {
+            final var kind = instruction.getKind();
+            if (kind.hasResult()) {
+                instruction.getResult();
+            }
+            if (kind.isBinary()) {
+                variables += instruction.getLHS().isIRVariable() ? 1 : 0;
+                variables += instruction.getRHS().isIRVariable() ? 1 : 0;
+            } else if (kind.isUnary()) {
+                variables += instruction.getFrom().isIRVariable() ? 1 : 0;
+            } else {
+                variables += instruction.getReturnValue().isIRVariable() ? 1 : 0;
+            }
+        }
+        return variables;
+    }
+
+    private static List<Token> lex(String code, SymbolTable symbolTable) {
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadSource(CharacterSource.of(code));
+        lexer.run();
+        final var tokens = new ArrayList<Token>();
+        lexer.getTokens().forEach(tokens::add);
+        return tokens;
+    }
+
+    /**
+     * @param tokens 词法单元流
+     * @return 词法分析结束时的符号表
+     */
+    private static SymbolTable symbolsOf(List<Token> tokens) {
+        final var symbolTable = new SymbolTable();
+        for (final var token : tokens) {
+            if ("id".equals(token.getKindId()) && !symbolTable.has(token.getText())) {
+                symbolTable.add(token.getText());
+            }
+        }
+        return symbolTable;
+    }
+
+    private static List<Instruction> generateIR(List<Token> tokens, SymbolTable symbolTable, ParseTable lrTable,
+                                                TempAllocator temps) {
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadTokens(tokens);
+        parser.loadLRTable(lrTable);
+        parser.registerObserver(new ProductionCollector(GrammarInfo.getBeginProduction()));
+        parser.registerObserver(new SemanticAnalyzer());
+        final var irGenerator = new IRGenerator(temps, new IRVariableTable());
+        parser.registerObserver(irGenerator);
+        parser.run();
+        return irGenerator.getIR();
+    }
+
+    /**
+     * 把程序放大到至少给定的大小
+     * <br>
+     * 变量不能重复声明, 所以只重复声明之后, return 语句之前的部分
+     *
+     * @param template 先声明变量, 以 return 语句结尾的程序
+     * @param size     目标大小 (字符数)
+     * @return 放大后的程序
+     */
+    static String scale(String template, int size) {
+        final var declarations = Pattern.compile("^\\s*int\\s+\\w+\\s*;\\s*$", Pattern.MULTILINE).matcher(template);
+        var bodyAt = 0;
+        while (declarations.find()) {
+            bodyAt = declarations.end();
+        }
+        final var returnAt = template.lastIndexOf("return");
+        final var head = template.substring(0, bodyAt);
+        final var body = template.substring(bodyAt, returnAt);
+        final var tail = template.substring(returnAt);
+
+        final var code = new StringBuilder(size + template.length()).append(head);
+        do {
+            code.append(body);
+        } while (code.length() + tail.length() < size);
+        return code.append(tail).toString();
+    }
+
+    private static List<Integer> parseSizes(String sizes) {
+        return Arrays.stream(sizes.split(",")).map(ProgramGenerator::parseSize).toList();
+    }
+
+    private static String formatSize(int size) {
+        if (size >= 1 << 20 && size % (1 << 20) == 0) {
+            return (size >> 20) + "M";
+        } else if (size >= 1 << 10 && size % (1 << 10) == 0) {
+            return (size >> 10) + "K";
+        }
+        return Integer.toString(size);
+    }
+
+    private PipelineBenchmarks(Pattern filter, BenchmarkRunner runner, PrintStream out) {
+        this.filter = filter;
+        this.runner = runner;
+        this.out = out;
+    }
+}
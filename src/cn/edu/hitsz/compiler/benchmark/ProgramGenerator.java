@@ -0,0 +1,287 @@
+package cn.edu.hitsz.compiler.benchmark;
+
+import cn.edu.hitsz.compiler.CompilationPipeline;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.LRTableCache;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 合成测试程序的生成器
+ * <br>
+ * 生成符合 grammar.txt 的任意大小的程序, 并在生成的同时按 IR 模拟执行的语义 (32 位补码整数, 溢出回绕) 算出程序的返回值,
+ * 用于对词法分析, 语法分析, 寄存器分配与模拟执行做压力测试与规模测试. 程序的结构由 {@link Shape} 决定.
+ * <br>
+ * 所有变量都在程序开头声明并赋初值, 之后才被读取, 程序以一条 return 语句结束. 相同的参数与种子总是生成相同的程序.
+ *
+ * @author hogan
+ */
+public final class ProgramGenerator {
+    /**
+     * 程序的结构
+     */
+    public enum Shape {
+        /**
+         * 每条语句随机选择以下三种结构之一
+         */
+        MIXED,
+        /**
+         * 深度嵌套的括号表达式, 考验语法分析栈的深度
+         */
+        DEEP,
+        /**
+         * 类似斐波那契数列的长依赖链, 每个变量由前两个变量算出, 与 reg-alloc.txt 类似
+         */
+        CHAIN,
+        /**
+         * 右结合的宽表达式 a * b + ( c * d + ( ... ) ), 所有乘积在最内层算完之前都同时活跃, 考验寄存器分配
+         */
+        WIDE
+    }
+
+    /**
+     * 生成的程序
+     *
+     * @param code       源代码
+     * @param expected   模拟执行的返回值
+     * @param statements 语句条数 (含声明与 return)
+     */
+    public record Program(String code, int expected, int statements) {
+    }
+
+    /**
+     * 生成的中间结果: 表达式文本与其值
+     */
+    private record Expr(String text, int value) {
+    }
+
+    private static final int DEFAULT_VARIABLES = 20;
+    private static final int DEFAULT_DEPTH = 32;
+    private static final int DEFAULT_WIDTH = 16;
+    private static final int MAX_CONSTANT = 100;
+
+    private final Random random;
+    private final int variables;
+    private final int depth;
+    private final int width;
+
+    private int[] values;
+
+    public ProgramGenerator(long seed) {
+        this(seed, DEFAULT_VARIABLES, DEFAULT_DEPTH, DEFAULT_WIDTH);
+    }
+
+    /**
+     * @param seed      随机数种子
+     * @param variables 程序中声明的变量个数, 至少为 2
+     * @param depth     {@link Shape#DEEP} 中括号嵌套的深度
+     * @param width     {@link Shape#WIDE} 中乘积的项数
+     */
+    public ProgramGenerator(long seed, int variables, int depth, int width) {
+        if (variables < 2 || depth < 1 || width < 1) {
+            throw new RuntimeException("Illegal generator parameters");
+        }
+        this.random = new Random(seed);
+        this.variables = variables;
+        this.depth = depth;
+        this.width = width;
+    }
+
+    /**
+     * 生成一个程序
+     *
+     * @param shape 程序的结构
+     * @param size  程序的目标大小 (字符数), 生成的程序不小于该大小
+     * @return 生成的程序及其返回值
+     */
+    public Program generate(Shape shape, int size) {
+        values = new int[variables];
+        final var code = new StringBuilder(size + 256);
+        var statements = 0;
+
+        for (int v = 0; v < variables; v++) {
+            code.append("int ").append(name(v)).append(";\n");
+            statements++;
+        }
+        for (int v = 0; v < variables; v++) {
+            assign(code, v, constant());
+            statements++;
+        }
+
+        var step = 0;
+        while (code.length() < size) {
+            final var target = step % variables;
+            final var current = shape == Shape.MIXED ? Shape.values()[1 + random.nextInt(3)] : shape;
+            final var expr = switch (current) {
+                case DEEP -> deep(depth);
+                case CHAIN -> chain(target);
+                default -> wide(width);
+            };
+            assign(code, target, expr);
+            statements++;
+            step++;
+        }
+
+        final var result = sum();
+        code.append("return ").append(result.text()).append(";\n");
+        return new Program(code.toString(), result.value(), statements + 1);
+    }
+
+    private void assign(StringBuilder code, int variable, Expr expr) {
+        code.append(name(variable)).append(" = ").append(expr.text()).append(";\n");
+        values[variable] = expr.value();
+    }
+
+    /**
+     * @return 形如 ( ( ( x + 1 ) * y ) - 2 ) 的嵌套表达式
+     */
+    private Expr deep(int levels) {
+        var expr = atom();
+        for (int i = 0; i < levels; i++) {
+            expr = parenthesize(binary(expr, random.nextInt(3), atom()));
+        }
+        return expr;
+    }
+
+    /**
+     * @return 由目标变量之前的两个变量算出的表达式, 如 f2 = f1 + f0
+     */
+    private Expr chain(int target) {
+        final var first = variable(Math.floorMod(target - 1, variables));
+        final var second = variable(Math.floorMod(target - 2, variables));
+        return binary(first, random.nextInt(4) == 0 ? 1 : 0, second);
+    }
+
+    /**
+     * @return 形如 a * b + ( c * d + ( e * f ) ) 的宽表达式
+     */
+    private Expr wide(int terms) {
+        var expr = binary(anyVariable(), 2, atom());
+        for (int i = 1; i < terms; i++) {
+            expr = binary(binary(anyVariable(), 2, atom()), random.nextInt(2), parenthesize(expr));
+        }
+        return expr;
+    }
+
+    /**
+     * @return 所有变量之和, 作为返回值
+     */
+    private Expr sum() {
+        var expr = variable(0);
+        for (int v = 1; v < variables; v++) {
+            expr = binary(expr, 0, variable(v));
+        }
+        return expr;
+    }
+
+    /**
+     * @param op 0 为 +, 1 为 -, 2 为 *
+     */
+    private static Expr binary(Expr lhs, int op, Expr rhs) {
+        return switch (op) {
+            case 0 -> new Expr(lhs.text() + " + " + rhs.text(), lhs.value() + rhs.value());
+            case 1 -> new Expr(lhs.text() + " - " + rhs.text(), lhs.value() - rhs.value());
+            // 乘法的两个操作数都必须是单个项或已加括号的表达式, 由调用方保证
+            default -> new Expr(lhs.text() + " * " + rhs.text(), lhs.value() * rhs.value());
+        };
+    }
+
+    private static Expr parenthesize(Expr expr) {
+        return new Expr("( " + expr.text() + " )", expr.value());
+    }
+
+    private Expr atom() {
+        return random.nextBoolean() ? anyVariable() : constant();
+    }
+
+    private Expr anyVariable() {
+        return variable(random.nextInt(variables));
+    }
+
+    private Expr variable(int variable) {
+        return new Expr(name(variable), values[variable]);
+    }
+
+    private Expr constant() {
+        final var value = random.nextInt(MAX_CONSTANT);
+        return new Expr(Integer.toString(value), value);
+    }
+
+    private static String name(int variable) {
+        return "v" + variable;
+    }
+
+    /**
+     * 生成一组程序, 可选地用编译流水线验证模拟执行的结果
+     * <br>
+     * 用法: {@code ProgramGenerator <shape> <size> <count> <outDir> [seed] [--check]}, 其中 size 可用 K 与 M 后缀.
+     * 程序写入 outDir/programs/ (可直接作为批量编译的输入), 期望的返回值写入 outDir/expected.csv.
+     * --check 需要在项目根目录下运行.
+     *
+     * @param args 命令行参数
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: ProgramGenerator <mixed|deep|chain|wide> <size> <count> <outDir> [seed] [--check]");
+            return;
+        }
+        final var shape = Shape.valueOf(args[0].toUpperCase(Locale.ROOT));
+        final var size = parseSize(args[1]);
+        final var count = Integer.parseInt(args[2]);
+        final var outDir = Path.of(args[3]);
+        final var seed = args.length > 4 && !args[4].startsWith("--") ? Long.parseLong(args[4]) : 0L;
+        final var check = args[args.length - 1].equals("--check");
+
+        final var programsDir = outDir.resolve("programs");
+        Files.createDirectories(programsDir);
+        final var generator = new ProgramGenerator(seed);
+        final var expected = new ArrayList<String>();
+        final var programs = new ArrayList<Program>();
+        for (int i = 0; i < count; i++) {
+            final var program = generator.generate(shape, size);
+            final var name = "%s_%04d.txt".formatted(shape.name().toLowerCase(Locale.ROOT), i);
+            Files.writeString(programsDir.resolve(name), program.code());
+            expected.add(name + "," + program.expected());
+            programs.add(program);
+        }
+        FileUtils.writeLines(outDir.resolve("expected.csv").toString(), expected);
+        System.out.printf("Generated %d %s programs of ~%d chars in %s%n", count, shape, size, programsDir);
+
+        if (check) {
+            final var out = System.out;
+            System.setOut(new PrintStream(PrintStream.nullOutputStream()));
+            TokenKind.loadTokenKinds();
+            final var pipeline = new CompilationPipeline(
+                LRTableCache.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR_TABLE_CACHE_PATH));
+            var failed = 0;
+            for (int i = 0; i < programs.size(); i++) {
+                final var program = programs.get(i);
+                final var actual = pipeline.compileSource(program.code()).emulateResult();
+                if (!actual.equals(Integer.toString(program.expected()))) {
+                    failed++;
+                    out.printf("MISMATCH %s: expected %d, got %s%n", expected.get(i), program.expected(), actual);
+                }
+            }
+            out.printf("Checked %d programs, %d mismatched%n", programs.size(), failed);
+        }
+    }
+
+    static int parseSize(String size) {
+        final var text = size.strip().toUpperCase(Locale.ROOT);
+        final var unit = switch (text.charAt(text.length() - 1)) {
+            case 'K' -> 1 << 10;
+            case 'M' -> 1 << 20;
+            default -> 1;
+        };
+        final var digits = unit == 1 ? text : text.substring(0, text.length() - 1);
+        return Math.toIntExact((long) Integer.parseInt(digits) * unit);
+    }
+}
@@ -9,5 +9,7 @@ public class ErrorDefination {
     public final static String NO_SUCH_STATE = "No such DFA State: %d";
     public final static String NO_SYMBOL = "No such symbol: %s";
     public final static String HAS_SYMBOL = "Duplicated symbol: %s";
+    public final static String UNEXPECTED_CHARACTER = "Unexpected character: '%c'";
+    public final static String NOT_ACCEPTED = "Syntax error: input not accepted after %d tokens";
 
 }
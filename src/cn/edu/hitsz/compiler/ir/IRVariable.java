@@ -6,55 +6,91 @@ package cn.edu.hitsz.compiler.ir;
  * 我们允许 IR 中的变量保存一些有关源语言的信息 -- 比如它在源语言里对应的是具体的源语言变量还是源语言中的临时变量. 这些信息用一个字符串
  * name 来表示. 临时变量的 name 都是 "$[0-9]+", 而非临时变量的 name 都是 "[a-zA-Z_][a-zA-Z0-9_]*"
  * <br>
- * IR 变量的等价性由 name 唯一确定.
+ * IR 变量的等价性由 name 唯一确定. 每个变量还带有一个 int 编号 {@link #id()}: 具名变量由本次编译的 {@link IRVariableTable} 驻留,
+ * 同名的具名变量是同一个对象, 编号按首次出现的顺序为 0, 1, 2, ...; 临时变量 $n 的编号为 ~n (负数), 其 name 只在需要时才拼出.
+ * 同一次编译中编号与 name 一一对应, 下游可以用以编号为下标的数组代替以 IRVariable 为键的哈希表, 见 {@link IRVariableIntMap}.
  */
 public class IRVariable implements IRValue {
     /**
+     * 具名变量应通过本次编译的 {@link IRVariableTable#named(String)} 获得
+     *
      * @param name 源语言中变量的名字
+     * @param id   变量在驻留表中的编号
      * @return 一个对应于源语言中具体变量的 IRVariable
      */
-    public static IRVariable named(String name) {
-        return new IRVariable(name);
+    static IRVariable namedOf(String name, int id) {
+        return new IRVariable(name, id);
     }
 
     /**
-     * @return 一个对应于源语言中的临时变量的新 IRVariable
+     * 新的临时变量应通过本次编译的 {@link TempAllocator#newTemp()} 获得
+     *
+     * @param index 临时变量的编号
+     * @return 名为 $index 的临时变量
      */
-    public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+    static IRVariable tempOf(int index) {
+        return new IRVariable(null, ~index);
     }
 
     public String getName() {
-        return name;
+        return name != null ? name : "$" + ~id;
+    }
+
+    /**
+     * @return 变量编号: 具名变量为非负数, 临时变量 $n 为 ~n
+     */
+    public int id() {
+        return id;
     }
 
     public boolean isTemp() {
-        return name.startsWith("$");
+        return id < 0;
     }
 
     public boolean isNamed() {
         return !isTemp();
     }
 
+    /**
+     * @return 临时变量 $n 的 n
+     */
+    public int tempIndex() {
+        if (!isTemp()) {
+            throw new RuntimeException("Not a temp: " + name);
+        }
+        return ~id;
+    }
+
     @Override
     public String toString() {
-        return name;
+        return getName();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof IRVariable reg && name.equals(reg.name);
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof IRVariable reg)) {
+            return false;
+        }
+        // 临时变量的编号就是其 name 中的数字; 不同编译中的同名具名变量编号可能不同, 只比较 name
+        return name == null ? reg.name == null && id == reg.id : name.equals(reg.name);
     }
 
     @Override
     public int hashCode() {
-        return name.hashCode();
+        return name == null ? id : name.hashCode();
     }
 
-    private IRVariable(String name) {
+    private IRVariable(String name, int id) {
         this.name = name;
+        this.id = id;
     }
 
+    /**
+     * 具名变量的名字, 临时变量为 null
+     */
     private final String name;
-    private static int count = 0;
+    private final int id;
 }
@@ -0,0 +1,99 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.Arrays;
+
+/**
+ * 以 {@link IRVariable#id()} 为下标的 IRVariable 到 int 的映射
+ * <br>
+ * 具名变量与临时变量分别存放在两组按需扩容的数组中, 查找与更新都是一次数组访问, 不再计算哈希与比较字符串.
+ * 数组的大小与出现过的最大编号成正比, 具名变量与临时变量的编号都在每次编译中从 0 开始, 所以只与本次编译的规模有关.
+ * 键应来自同一次编译, 不同编译中的同名具名变量编号可能不同.
+ *
+ * @author hogan
+ */
+public final class IRVariableIntMap {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] namedValues;
+    private boolean[] namedPresent;
+    private int[] tempValues;
+    private boolean[] tempPresent;
+
+    public IRVariableIntMap() {
+        this(INITIAL_CAPACITY, INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param namedCapacity 具名变量的初始容量
+     * @param tempCapacity  临时变量的初始容量
+     */
+    public IRVariableIntMap(int namedCapacity, int tempCapacity) {
+        this.namedValues = new int[Math.max(namedCapacity, 1)];
+        this.namedPresent = new boolean[namedValues.length];
+        this.tempValues = new int[Math.max(tempCapacity, 1)];
+        this.tempPresent = new boolean[tempValues.length];
+    }
+
+    public boolean containsKey(IRVariable variable) {
+        final var id = variable.id();
+        if (id >= 0) {
+            return id < namedPresent.length && namedPresent[id];
+        }
+        final var index = ~id;
+        return index < tempPresent.length && tempPresent[index];
+    }
+
+    /**
+     * @param variable 变量
+     * @return 变量对应的值
+     * @throws RuntimeException 变量没有对应的值
+     */
+    public int get(IRVariable variable) {
+        if (!containsKey(variable)) {
+            throw new RuntimeException("No value for variable " + variable);
+        }
+        final var id = variable.id();
+        return id >= 0 ? namedValues[id] : tempValues[~id];
+    }
+
+    public int getOrDefault(IRVariable variable, int defaultValue) {
+        if (!containsKey(variable)) {
+            return defaultValue;
+        }
+        final var id = variable.id();
+        return id >= 0 ? namedValues[id] : tempValues[~id];
+    }
+
+    public void put(IRVariable variable, int value) {
+        final var id = variable.id();
+        if (id >= 0) {
+            if (id >= namedValues.length) {
+                final var capacity = Math.max(id + 1, namedValues.length * 2);
+                namedValues = Arrays.copyOf(namedValues, capacity);
+                namedPresent = Arrays.copyOf(namedPresent, capacity);
+            }
+            namedValues[id] = value;
+            namedPresent[id] = true;
+        } else {
+            final var index = ~id;
+            if (index >= tempValues.length) {
+                final var capacity = Math.max(index + 1, tempValues.length * 2);
+                tempValues = Arrays.copyOf(tempValues, capacity);
+                tempPresent = Arrays.copyOf(tempPresent, capacity);
+            }
+            tempValues[index] = value;
+            tempPresent[index] = true;
+        }
+    }
+
+    public void remove(IRVariable variable) {
+        final var id = variable.id();
+        if (id >= 0) {
+            if (id < namedPresent.length) {
+                namedPresent[id] = false;
+            }
+        } else if (~id < tempPresent.length) {
+            tempPresent[~id] = false;
+        }
+    }
+}
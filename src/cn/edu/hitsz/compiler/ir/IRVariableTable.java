@@ -0,0 +1,32 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一次编译中具名 IR 变量的驻留表
+ * <br>
+ * 同名的具名变量在同一张表中是同一个对象, 编号按首次出现的顺序为 0, 1, 2, ... 编号只在本次编译内有意义,
+ * 所以各个以编号为下标的数组 (见 {@link IRVariableIntMap}) 的大小只与本次编译中出现的变量个数有关,
+ * 编译结束后整张表随会话一起被回收, 常驻进程也不会因为见过的变量名越来越多而占用越来越多的内存.
+ * <br>
+ * 与 {@link TempAllocator} 一样, 每次编译使用自己的表, 单张表不是线程安全的.
+ *
+ * @author hogan
+ */
+public final class IRVariableTable {
+    private final Map<String, IRVariable> byName = new HashMap<>();
+
+    /**
+     * @param name 源语言中变量的名字
+     * @return 该名字在本次编译中对应的 IRVariable
+     */
+    public IRVariable named(String name) {
+        var variable = byName.get(name);
+        if (variable == null) {
+            variable = IRVariable.namedOf(name, byName.size());
+            byName.put(name, variable);
+        }
+        return variable;
+    }
+}
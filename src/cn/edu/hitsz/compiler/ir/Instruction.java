@@ -1,9 +1,7 @@
 package cn.edu.hitsz.compiler.ir;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -55,27 +53,27 @@ public class Instruction {
     }
 
     public IRVariable getResult() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.MOV));
+        ensureKindMatch(RESULT_KINDS);
         return result;
     }
 
     public IRValue getLHS() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL));
+        ensureKindMatch(BINARY_KINDS);
         return operands.get(0);
     }
 
     public IRValue getRHS() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL));
+        ensureKindMatch(BINARY_KINDS);
         return operands.get(1);
     }
 
     public IRValue getFrom() {
-        ensureKindMatch(Set.of(InstructionKind.MOV));
+        ensureKindMatch(MOV_KINDS);
         return operands.get(0);
     }
 
     public IRValue getReturnValue() {
-        ensureKindMatch(Set.of(InstructionKind.RET));
+        ensureKindMatch(RET_KINDS);
         return operands.get(0);
     }
 
@@ -83,14 +81,42 @@ public class Instruction {
     //============================== 基础设施 ==============================
     @Override
     public String toString() {
-        final var kindString = kind.toString();
-        final var resultString = result == null ? "" : result.toString();
-        final var operandsString = operands.stream().map(Objects::toString).collect(Collectors.joining(", "));
-        return "(%s, %s, %s)".formatted(kindString, resultString, operandsString);
+        final var builder = new StringBuilder("(").append(kind).append(", ");
+        if (result != null) {
+            builder.append(result);
+        }
+        builder.append(", ");
+        for (int i = 0; i < operands.size(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(operands.get(i));
+        }
+        return builder.append(')').toString();
     }
 
+    /**
+     * @return 操作数列表, 由 List.of 构造, 本身不可修改
+     */
     public List<IRValue> getOperands() {
-        return Collections.unmodifiableList(operands);
+        return operands;
+    }
+
+    /**
+     * 不检查指令种类地读取结果, 供同一包内的 {@link InstructionBuffer} 使用
+     *
+     * @return 结果, RET 为 null
+     */
+    IRVariable rawResult() {
+        return result;
+    }
+
+    /**
+     * @param index 操作数下标
+     * @return 不检查指令种类地读取操作数, 供同一包内的 {@link InstructionBuffer} 使用
+     */
+    IRValue rawOperand(int index) {
+        return operands.get(index);
     }
 
     private Instruction(InstructionKind kind, IRVariable result, List<IRValue> operands) {
@@ -103,15 +129,31 @@ public class Instruction {
     private final IRVariable result;
     private final List<IRValue> operands;
 
-    private void ensureKindMatch(Set<InstructionKind> targetKinds) {
-        final var kind = getKind();
-        if (!targetKinds.contains(kind)) {
-            final var acceptKindsString = targetKinds.stream()
-                .map(InstructionKind::toString)
-                .collect(Collectors.joining(","));
-
-            throw new RuntimeException(
-                "Illegal operand access, except %s, but given %s".formatted(acceptKindsString, kind));
+    //============================== 各 getter 接受的指令种类 ==============================
+    private static final int RESULT_KINDS = InstructionKind.maskOf(
+        InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.MOV);
+    private static final int BINARY_KINDS = InstructionKind.maskOf(
+        InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL);
+    private static final int MOV_KINDS = InstructionKind.maskOf(InstructionKind.MOV);
+    private static final int RET_KINDS = InstructionKind.maskOf(InstructionKind.RET);
+
+    /**
+     * 只做一次位运算, 出错时才拼出错误信息
+     *
+     * @param targetKinds {@link InstructionKind#maskOf(InstructionKind...)} 得到的集合
+     */
+    private void ensureKindMatch(int targetKinds) {
+        if (!kind.in(targetKinds)) {
+            throw illegalAccess(targetKinds);
         }
     }
+
+    private RuntimeException illegalAccess(int targetKinds) {
+        final var acceptKindsString = Arrays.stream(InstructionKind.values())
+            .filter(targetKind -> targetKind.in(targetKinds))
+            .map(InstructionKind::toString)
+            .collect(Collectors.joining(","));
+        return new RuntimeException(
+            "Illegal operand access, except %s, but given %s".formatted(acceptKindsString, kind));
+    }
 }
@@ -0,0 +1,236 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * 紧凑存储的 IR 指令序列
+ * <br>
+ * 每条指令以结构数组的形式存放在平行的数组中: opcodes 的低 3 位为 {@link InstructionKind} 的序号, 其余位标记操作数是否为立即数;
+ * results, lhs 与 rhs 分别为结果与两个操作数. MOV 与 RET 的唯一操作数存放在 lhs 中, RET 没有结果.
+ * <br>
+ * 变量以其编号 {@link IRVariable#id()} 表示: 非负数为具名变量在本次编译的 {@link IRVariableTable} 中的编号, 负数 ~n 为临时变量 $n;
+ * 立即数直接以其值存放在操作数数组中. 每条指令共占 13 字节, 不再为指令, 操作数列表, 变量名与立即数分别分配对象.
+ * 缓冲区记下追加过的具名变量, 以便由编号找回变量对象, 因此一个缓冲区中的变量应来自同一次编译.
+ * <br>
+ * 作为 {@code List<Instruction>} 读取时, 每次 {@link #get(int)} 都会按存储的内容构造一条等价的 {@link Instruction},
+ * 所以已有的 IR 消费者无需修改; 对性能敏感的遍历应直接使用 {@link #kind(int)}, {@link #lhs(int)} 等按下标访问的方法.
+ *
+ * @author hogan
+ */
+public final class InstructionBuffer extends AbstractList<Instruction> implements RandomAccess {
+    private static final int KIND_MASK = 0b111;
+    private static final int LHS_IMMEDIATE = 1 << 3;
+    private static final int RHS_IMMEDIATE = 1 << 4;
+    private static final InstructionKind[] KINDS = InstructionKind.values();
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] opcodes;
+    private int[] results;
+    private int[] lhs;
+    private int[] rhs;
+    private int size = 0;
+
+    /**
+     * 按编号记录追加过的具名变量, namedBound 为其中最大编号加一
+     */
+    private IRVariable[] named = new IRVariable[16];
+    private int namedBound = 0;
+
+    public InstructionBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param capacity 初始容量 (指令条数)
+     */
+    public InstructionBuffer(int capacity) {
+        final var initial = Math.max(capacity, 1);
+        this.opcodes = new byte[initial];
+        this.results = new int[initial];
+        this.lhs = new int[initial];
+        this.rhs = new int[initial];
+    }
+
+    //============================== 追加 ==============================
+
+    /**
+     * 追加一条指令
+     *
+     * @param instruction 指令
+     * @return true
+     */
+    @Override
+    public boolean add(Instruction instruction) {
+        final var kind = instruction.getKind();
+        final var second = kind.isBinary() ? instruction.rawOperand(1) : null;
+        append(kind, instruction.rawResult(), instruction.rawOperand(0), second);
+        return true;
+    }
+
+    /**
+     * 不经过 {@link Instruction} 直接追加一条指令
+     *
+     * @param kind   指令种类
+     * @param result 结果, RET 为 null
+     * @param first  第一个操作数 (二元指令的 lhs, MOV 的 from, RET 的返回值)
+     * @param second 第二个操作数, 只有二元指令才有
+     */
+    public void append(InstructionKind kind, IRVariable result, IRValue first, IRValue second) {
+        if (size == opcodes.length) {
+            grow();
+        }
+        var opcode = kind.ordinal();
+        results[size] = result == null ? 0 : idOf(result);
+        if (first instanceof IRImmediate immediate) {
+            opcode |= LHS_IMMEDIATE;
+            lhs[size] = immediate.getValue();
+        } else {
+            lhs[size] = idOf((IRVariable) first);
+        }
+        if (second instanceof IRImmediate immediate) {
+            opcode |= RHS_IMMEDIATE;
+            rhs[size] = immediate.getValue();
+        } else {
+            rhs[size] = second == null ? 0 : idOf((IRVariable) second);
+        }
+        opcodes[size] = (byte) opcode;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * @return 变量的编号, 具名变量同时被记录下来
+     */
+    private int idOf(IRVariable variable) {
+        final var id = variable.id();
+        if (id < 0) {
+            return id;
+        }
+        if (id >= named.length) {
+            named = Arrays.copyOf(named, Math.max(id + 1, named.length * 2));
+        }
+        final var known = named[id];
+        if (known == null) {
+            named[id] = variable;
+            namedBound = Math.max(namedBound, id + 1);
+        } else if (known != variable && !known.equals(variable)) {
+            throw new RuntimeException("Variables %s and %s from different compilations in one buffer".formatted(known, variable));
+        }
+        return id;
+    }
+
+    /**
+     * 把各数组缩小到恰好容纳现有的指令, 在不再追加指令后调用
+     */
+    public void trimToSize() {
+        if (size < opcodes.length) {
+            final var capacity = Math.max(size, 1);
+            opcodes = Arrays.copyOf(opcodes, capacity);
+            results = Arrays.copyOf(results, capacity);
+            lhs = Arrays.copyOf(lhs, capacity);
+            rhs = Arrays.copyOf(rhs, capacity);
+        }
+        if (namedBound < named.length) {
+            named = Arrays.copyOf(named, Math.max(namedBound, 1));
+        }
+    }
+
+    private void grow() {
+        final var capacity = opcodes.length * 2;
+        opcodes = Arrays.copyOf(opcodes, capacity);
+        results = Arrays.copyOf(results, capacity);
+        lhs = Arrays.copyOf(lhs, capacity);
+        rhs = Arrays.copyOf(rhs, capacity);
+    }
+
+    //============================== 按下标访问 ==============================
+
+    public InstructionKind kind(int index) {
+        return KINDS[opcodes[checkIndex(index)] & KIND_MASK];
+    }
+
+    /**
+     * @return 结果变量的编号, RET 没有结果
+     */
+    public int result(int index) {
+        return results[checkIndex(index)];
+    }
+
+    /**
+     * @return 第一个操作数: 立即数时为其值, 否则为变量编号
+     */
+    public int lhs(int index) {
+        return lhs[checkIndex(index)];
+    }
+
+    /**
+     * @return 第二个操作数: 立即数时为其值, 否则为变量编号
+     */
+    public int rhs(int index) {
+        return rhs[checkIndex(index)];
+    }
+
+    public boolean isLhsImmediate(int index) {
+        return (opcodes[checkIndex(index)] & LHS_IMMEDIATE) != 0;
+    }
+
+    public boolean isRhsImmediate(int index) {
+        return (opcodes[checkIndex(index)] & RHS_IMMEDIATE) != 0;
+    }
+
+    /**
+     * @param id 变量编号
+     * @return 对应的 IR 变量, 具名变量总是返回追加时的那个对象
+     */
+    public IRVariable variable(int id) {
+        if (id < 0) {
+            return IRVariable.tempOf(~id);
+        }
+        if (id >= namedBound || named[id] == null) {
+            throw new RuntimeException("No variable with id " + id + " in this buffer");
+        }
+        return named[id];
+    }
+
+    /**
+     * @return 出现过的具名变量编号的上界 (不含), 以编号为下标的数组取这个大小即可
+     */
+    public int namedBound() {
+        return namedBound;
+    }
+
+    //============================== List 视图 ==============================
+
+    @Override
+    public Instruction get(int index) {
+        final var kind = kind(index);
+        return switch (kind) {
+            case ADD -> Instruction.createAdd(variable(results[index]), lhsValue(index), rhsValue(index));
+            case SUB -> Instruction.createSub(variable(results[index]), lhsValue(index), rhsValue(index));
+            case MUL -> Instruction.createMul(variable(results[index]), lhsValue(index), rhsValue(index));
+            case MOV -> Instruction.createMov(variable(results[index]), lhsValue(index));
+            case RET -> Instruction.createRet(lhsValue(index));
+        };
+    }
+
+    private IRValue lhsValue(int index) {
+        return (opcodes[index] & LHS_IMMEDIATE) != 0 ? IRImmediate.of(lhs[index]) : variable(lhs[index]);
+    }
+
+    private IRValue rhsValue(int index) {
+        return (opcodes[index] & RHS_IMMEDIATE) != 0 ? IRImmediate.of(rhs[index]) : variable(rhs[index]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int checkIndex(int index) {
+        return Objects.checkIndex(index, size);
+    }
+}
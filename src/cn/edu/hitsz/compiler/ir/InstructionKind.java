@@ -2,28 +2,81 @@ package cn.edu.hitsz.compiler.ir;
 
 /**
  * IR 的种类
+ * <br>
+ * 每个种类的元数据 (是否有结果, 操作数个数, 以及用于集合运算的位) 在枚举常量构造时算好, 查询时只读字段, 不分配对象.
  */
 public enum InstructionKind {
-    ADD, SUB, MUL, MOV, RET;
+    ADD(true, 2), SUB(true, 2), MUL(true, 2), MOV(true, 1), RET(false, 1);
+
+    private final boolean hasResult;
+    private final int operandCount;
+    private final int bit;
+
+    InstructionKind(boolean hasResult, int operandCount) {
+        this.hasResult = hasResult;
+        this.operandCount = operandCount;
+        this.bit = 1 << ordinal();
+    }
+
+    /**
+     * @param kinds 若干种类
+     * @return 这些种类的位的并集, 用于快速判断某个种类是否属于一个集合
+     */
+    public static int maskOf(InstructionKind... kinds) {
+        var mask = 0;
+        for (final var kind : kinds) {
+            mask |= kind.bit;
+        }
+        return mask;
+    }
+
+    /**
+     * @return 该种类在 {@link #maskOf(InstructionKind...)} 中对应的位
+     */
+    public int bit() {
+        return bit;
+    }
+
+    /**
+     * @param mask {@link #maskOf(InstructionKind...)} 得到的集合
+     * @return 该种类是否属于集合
+     */
+    public boolean in(int mask) {
+        return (mask & bit) != 0;
+    }
+
+    /**
+     * @return IR 是否有结果 (写入一个 IR 变量)
+     */
+    public boolean hasResult() {
+        return hasResult;
+    }
+
+    /**
+     * @return IR 的操作数个数
+     */
+    public int operandCount() {
+        return operandCount;
+    }
 
     /**
      * @return IR 是否是二元的 (有返回值, 有两个参数)
      */
     public boolean isBinary() {
-        return this != MOV && this != RET;
+        return hasResult && operandCount == 2;
     }
 
     /**
      * @return IR 是否是一元的 (有返回值, 有一个参数)
      */
     public boolean isUnary() {
-        return this == MOV;
+        return hasResult && operandCount == 1;
     }
 
     /**
      * @return IR 是否为 RET 指令
      */
     public boolean isReturn() {
-        return this == RET;
+        return !hasResult;
     }
 }
@@ -0,0 +1,40 @@
+package cn.edu.hitsz.compiler.ir;
+
+/**
+ * 临时变量名的分配器
+ * <br>
+ * 临时变量按分配顺序命名为 $0, $1, ... 每次编译使用自己的分配器, 同一次编译中 IR 生成与汇编生成共享同一个分配器,
+ * 这样不同编译之间的临时变量编号互不干扰, 也就可以在多个线程上同时编译.
+ * <br>
+ * 单个分配器不是线程安全的, 只应在一次编译内部使用.
+ *
+ * @author hogan
+ */
+public final class TempAllocator {
+    public TempAllocator() {
+        this(0);
+    }
+
+    /**
+     * @param next 下一个临时变量的编号, 用于在已经生成的 IR 之后继续分配
+     */
+    public TempAllocator(int next) {
+        this.next = next;
+    }
+
+    /**
+     * @return 一个新的临时变量
+     */
+    public IRVariable newTemp() {
+        return IRVariable.tempOf(next++);
+    }
+
+    /**
+     * @return 下一个临时变量的编号, 也即已经用掉的编号个数
+     */
+    public int count() {
+        return next;
+    }
+
+    private int next;
+}
@@ -0,0 +1,32 @@
+package cn.edu.hitsz.compiler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 一次完整编译 (一个源文件) 的 JFR 事件, 由 {@link cn.edu.hitsz.compiler.CompilationPipeline} 提交
+ *
+ * @author hogan
+ */
+@Name("cn.edu.hitsz.compiler.Compile")
+@Label("Compile")
+@Category({"Compiler"})
+@Description("Compilation of one source file through all stages")
+@StackTrace(false)
+public class CompileEvent extends jdk.jfr.Event {
+    @Label("Source")
+    @Description("Source file path, or <memory> for in-memory source")
+    public String source;
+
+    @Label("Tokens")
+    public int tokens;
+
+    @Label("IR Instructions")
+    public int irInstructions;
+
+    @Label("Assembly Lines")
+    public int asmLines;
+}
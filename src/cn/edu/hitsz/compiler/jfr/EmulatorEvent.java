@@ -0,0 +1,25 @@
+package cn.edu.hitsz.compiler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 一次 IR 模拟执行, 由 {@link cn.edu.hitsz.compiler.utils.IREmulator} 提交
+ *
+ * @author hogan
+ */
+@Name("cn.edu.hitsz.compiler.Emulator")
+@Label("IR Emulation")
+@Category({"Compiler", "Emulator"})
+@Description("Execution of the IR by the emulator")
+@StackTrace(false)
+public class EmulatorEvent extends jdk.jfr.Event {
+    @Label("Instructions")
+    public int instructions;
+
+    @Label("Result")
+    public String result;
+}
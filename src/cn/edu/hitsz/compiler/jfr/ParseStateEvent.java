@@ -0,0 +1,29 @@
+package cn.edu.hitsz.compiler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 一次语法分析中某个 LR 状态上执行的动作次数, 分析结束时由 {@link cn.edu.hitsz.compiler.parser.SyntaxAnalyzer}
+ * 为每个执行过动作的状态提交一个
+ *
+ * @author hogan
+ */
+@Name("cn.edu.hitsz.compiler.ParseState")
+@Label("LR State Actions")
+@Category({"Compiler", "Parser"})
+@Description("Number of LR actions taken in one state during one parse")
+@StackTrace(false)
+public class ParseStateEvent extends jdk.jfr.Event {
+    @Label("State")
+    public int state;
+
+    @Label("Shifts")
+    public int shifts;
+
+    @Label("Reduces")
+    public int reduces;
+}
@@ -0,0 +1,25 @@
+package cn.edu.hitsz.compiler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 寄存器分配时找不到空闲寄存器, 由 {@link cn.edu.hitsz.compiler.asm.AssemblyGenerator} 提交
+ *
+ * @author hogan
+ */
+@Name("cn.edu.hitsz.compiler.Spill")
+@Label("Register Spill")
+@Category({"Compiler", "Codegen"})
+@Description("No free register was found while allocating for an IR instruction")
+@StackTrace(false)
+public class SpillEvent extends jdk.jfr.Event {
+    @Label("Instruction Index")
+    public int line;
+
+    @Label("Instruction")
+    public String instruction;
+}
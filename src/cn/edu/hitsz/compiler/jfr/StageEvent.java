@@ -0,0 +1,31 @@
+package cn.edu.hitsz.compiler.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 编译中一个阶段的 JFR 事件, 由 {@link cn.edu.hitsz.compiler.lexer.LexicalAnalyzer},
+ * {@link cn.edu.hitsz.compiler.parser.SyntaxAnalyzer} 与 {@link cn.edu.hitsz.compiler.asm.AssemblyGenerator} 提交
+ *
+ * @author hogan
+ */
+@Name("cn.edu.hitsz.compiler.Stage")
+@Label("Compiler Stage")
+@Category({"Compiler"})
+@Description("One stage of a compilation")
+@StackTrace(false)
+public class StageEvent extends jdk.jfr.Event {
+    public static final String LEXER = "lexer";
+    public static final String PARSER = "parser";
+    public static final String CODEGEN = "codegen";
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Items")
+    @Description("Tokens produced by the lexer, tokens consumed by the parser, or instructions emitted by codegen")
+    public int items;
+}
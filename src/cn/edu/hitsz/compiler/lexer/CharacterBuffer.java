@@ -0,0 +1,68 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 词法分析所用的字符缓冲区, 提供当前字符, 向前看 (lookahead) 与回看 (lookbehind) 的访问
+ * <br>
+ * 带装箱的方法与 {@link FileCharacterIterator} 原有的接口保持一致; 带 Char 后缀的方法返回基本类型 char,
+ * 实现类可以覆盖它们以避免装箱.
+ *
+ * @author hogan
+ * @see FileCharacterIterator 基于链表的缓冲区
+ * @see RingCharacterIterator 基于 char[] 环形数组的缓冲区
+ */
+public interface CharacterBuffer extends Iterable<Character>, Iterator<Character> {
+    /**
+     * @return 当前字符, 读完时为 {@link FCIData#DONE}
+     */
+    Character current();
+
+    /**
+     * @param index 向前看的距离, 0 即当前字符
+     * @return 当前字符之后第 index 个字符
+     */
+    Character current(int index);
+
+    /**
+     * @param index 回看的距离, 不能超过缓冲区大小
+     * @return 当前字符之前第 index 个字符
+     */
+    Character last(int index);
+
+    /**
+     * @return 缓冲区中的全部字符, 仅用于调试输出
+     */
+    List<Character> getBuffer();
+
+    default char currentChar() {
+        return current();
+    }
+
+    default char currentChar(int index) {
+        return current(index);
+    }
+
+    default char lastChar(int index) {
+        return last(index);
+    }
+
+    /**
+     * 前进一个字符, 不返回任何值
+     */
+    default void advance() {
+        next();
+    }
+
+    /**
+     * 前进 count 个字符
+     *
+     * @param count 前进的字符数
+     */
+    default void advance(int count) {
+        for (int i = 0; i < count; i++) {
+            advance();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.StringCharacterIterator;
+
+/**
+ * 字符缓冲区背后的数据源, 逐个提供源文件中的字符
+ * <br>
+ * 打开了文件的数据源持有文件句柄, 用完后 (包括词法分析中途出错时) 应调用 {@link #close()} 释放
+ *
+ * @author hogan
+ * @see FCIData 按行读取的数据源
+ * @see MappedCharacterSource 基于内存映射与增量 UTF-8 解码的数据源
+ */
+public interface CharacterSource extends AutoCloseable {
+    char DONE = StringCharacterIterator.DONE;
+
+    /**
+     * @return 当前字符, 读完时为 {@link #DONE}
+     */
+    char current();
+
+    /**
+     * 前进一个字符
+     *
+     * @return 数据源自身
+     */
+    CharacterSource next();
+
+    /**
+     * 释放数据源占用的资源, 可以重复调用. 默认什么也不做
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * @param path 文件路径
+     * @return 以 BufferedReader 逐行读取的数据源, 行尾换行符会被丢弃
+     */
+    static CharacterSource lines(String path) throws IOException {
+        return new FCIData(Files.newBufferedReader(Paths.get(path)));
+    }
+
+    /**
+     * @param path 文件路径
+     * @return 以内存映射读取并增量解码的数据源, 保留换行符
+     */
+    static CharacterSource mapped(String path) throws IOException {
+        return new MappedCharacterSource(Paths.get(path));
+    }
+
+    /**
+     * @param text 源代码
+     * @return 逐个读取内存中字符的数据源, 保留换行符
+     */
+    static CharacterSource of(CharSequence text) {
+        return new StringCharacterSource(text);
+    }
+}
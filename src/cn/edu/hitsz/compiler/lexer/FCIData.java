@@ -10,8 +10,8 @@ import java.text.StringCharacterIterator;
  * @author hogan
  */
 
-public class FCIData {
-    static char DONE = StringCharacterIterator.DONE;
+public class FCIData implements CharacterSource {
+    static char DONE = CharacterSource.DONE;
     private String line = null;
     private StringCharacterIterator iterator = null;
     private final BufferedReader reader;
@@ -20,6 +20,7 @@ public class FCIData {
         this.reader = reader;
     }
 
+    @Override
     public char current() {
         try {
             if (iterator != null) {
@@ -42,6 +43,7 @@ public class FCIData {
         }
     }
 
+    @Override
     public FCIData next() {
         try {
             if (iterator != null) {
@@ -59,5 +61,14 @@ public class FCIData {
         }
         return this;
     }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
 
@@ -1,8 +1,6 @@
 package cn.edu.hitsz.compiler.lexer;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -12,27 +10,27 @@ import java.util.List;
  * @author hogan
  */
 
-public class FileCharacterIterator implements Iterable<Character>, Iterator<Character> {
-    private final FCIData dataIterator;
+public class FileCharacterIterator implements CharacterBuffer {
+    private final CharacterSource dataIterator;
 
     private final List<Character> buffer;
     private int bufferOffset = 0;
     private final int bufferSize;
     private final static int BUFFER_PRELOAD_BATCH = 2;
 
-    private FileCharacterIterator(FCIData dataIterator) {
+    private FileCharacterIterator(CharacterSource dataIterator) {
         this.dataIterator = dataIterator;
         bufferSize = 0;
         buffer = new LinkedList<>();
     }
 
-    public FileCharacterIterator(FCIData dataIterator, List<Character> buffer, int bufferSize) {
+    public FileCharacterIterator(CharacterSource dataIterator, List<Character> buffer, int bufferSize) {
         this.dataIterator = dataIterator;
         this.buffer = buffer;
         this.bufferSize = bufferSize;
     }
 
-    private FileCharacterIterator(FCIData dataIterator, int bufferSize) {
+    private FileCharacterIterator(CharacterSource dataIterator, int bufferSize) {
         this.dataIterator = dataIterator;
         buffer = new LinkedList<>();
         this.bufferSize = bufferSize;
@@ -53,7 +51,11 @@ public class FileCharacterIterator implements Iterable<Character>, Iterator<Char
     }
 
     static public FileCharacterIterator build(String path, int bufferSize) throws IOException {
-        return new FileCharacterIterator(new FCIData(Files.newBufferedReader(Paths.get(path))), bufferSize);
+        return FileCharacterIterator.build(CharacterSource.lines(path), bufferSize);
+    }
+
+    static public FileCharacterIterator build(CharacterSource source, int bufferSize) {
+        return new FileCharacterIterator(source, bufferSize);
     }
 
     /**
@@ -102,6 +104,7 @@ public class FileCharacterIterator implements Iterable<Character>, Iterator<Char
         }
     }
 
+    @Override
     public Character current() {
         if (bufferSize == 0) {
             return dataIterator.current();
@@ -110,6 +113,7 @@ public class FileCharacterIterator implements Iterable<Character>, Iterator<Char
         }
     }
 
+    @Override
     public Character current(int index) {
         if (bufferSize == 0) {
             return current();
@@ -120,11 +124,13 @@ public class FileCharacterIterator implements Iterable<Character>, Iterator<Char
         return buffer.get(index + bufferOffset + bufferSize);
     }
 
+    @Override
     public Character last(int index) {
         assert bufferSize != 0;
         return buffer.get(bufferOffset + bufferSize - index);
     }
 
+    @Override
     public List<Character> getBuffer() {
         return buffer;
     }
@@ -0,0 +1,140 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 由词法规则文件 (lexer_spec.txt) 编译出的表驱动 DFA
+ * <br>
+ * 规则文件每行形如 {@code IntConst [0-9]+}, 空格前为码点文件中的 TokenKind 标识符, 空格后为模式串;
+ * 标识符为 {@code @skip} 的规则匹配的内容会被丢弃. 行的先后即为规则的优先级, 所以关键字需要写在 id 之前.
+ * 模式串是字面串的规则产生不带文本的简单 token, 其余规则产生带文本的 token.
+ * <br>
+ * 转移表按 {@code transitions[state * classCount + charClass]} 存放在一维数组中, 其中 0 号状态为死状态,
+ * {@link #START} 为起始状态. 新增词法单元只需在码点文件与规则文件中加入对应的行.
+ *
+ * @author hogan
+ * @see PatternCompiler 模式串的编译
+ */
+public final class LexerDFA {
+    public static final int DEAD = 0;
+    public static final int START = 1;
+    public static final String SKIP = "@skip";
+
+    /**
+     * 编译出的转移表
+     *
+     * @param transitions 转移表
+     * @param classCount  字符类数量
+     * @param charClass   ASCII 字符到字符类的映射
+     * @param acceptRule  各状态接受的规则序号, 非接受状态为 -1
+     */
+    record Tables(int[] transitions, int classCount, int[] charClass, int[] acceptRule) {
+    }
+
+    /**
+     * 从默认路径读取规则文件, 需要在 {@link TokenKind#loadTokenKinds()} 之后调用
+     *
+     * @return 编译出的 DFA
+     */
+    public static LexerDFA getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * @param path 规则文件路径
+     * @return 编译出的 DFA
+     */
+    public static LexerDFA load(String path) {
+        return compile(FileUtils.readLines(path).stream().filter(line -> !line.isBlank()).toList());
+    }
+
+    /**
+     * @param rules 规则文件的各行
+     * @return 编译出的 DFA
+     */
+    public static LexerDFA compile(List<String> rules) {
+        final var patterns = new ArrayList<String>();
+        final var kinds = new TokenKind[rules.size()];
+        final var keepText = new boolean[rules.size()];
+        for (int idx = 0; idx < rules.size(); idx++) {
+            final var words = rules.get(idx).split(" ", 2);
+            if (words.length != 2) {
+                throw new RuntimeException("Illegal lexer rule: " + rules.get(idx));
+            }
+            final var id = words[0];
+            final var pattern = words[1];
+            // @skip 规则的 kind 为 null
+            kinds[idx] = SKIP.equals(id) ? null : TokenKind.fromString(id);
+            keepText[idx] = !PatternCompiler.isLiteral(pattern);
+            patterns.add(pattern);
+        }
+
+        return new LexerDFA(PatternCompiler.compile(patterns), kinds, keepText);
+    }
+
+    /**
+     * @param state 当前状态
+     * @param c     当前字符
+     * @return 转移到的状态, 无法转移时为 {@link #DEAD}
+     */
+    public int step(int state, char c) {
+        final var cls = c < PatternCompiler.ALPHABET_SIZE ? charClass[c] : 0;
+        return transitions[state * classCount + cls];
+    }
+
+    /**
+     * @param state 状态
+     * @return 该状态接受的规则序号, 非接受状态为 -1
+     */
+    public int acceptRule(int state) {
+        return acceptRule[state];
+    }
+
+    /**
+     * @param rule 规则序号
+     * @return 该规则产生的 token 类型, {@code @skip} 规则为 null
+     */
+    public TokenKind kindOf(int rule) {
+        return kinds[rule];
+    }
+
+    public boolean isSkip(int rule) {
+        return kinds[rule] == null;
+    }
+
+    /**
+     * @param rule 规则序号
+     * @return 该规则产生的 token 是否需要保留源文本
+     */
+    public boolean keepsText(int rule) {
+        return keepText[rule];
+    }
+
+    public int stateCount() {
+        return acceptRule.length;
+    }
+
+    private LexerDFA(Tables tables, TokenKind[] kinds, boolean[] keepText) {
+        this.transitions = tables.transitions();
+        this.classCount = tables.classCount();
+        this.charClass = tables.charClass();
+        this.acceptRule = tables.acceptRule();
+        this.kinds = kinds;
+        this.keepText = keepText;
+    }
+
+    private final int[] transitions;
+    private final int classCount;
+    private final int[] charClass;
+    private final int[] acceptRule;
+    private final TokenKind[] kinds;
+    private final boolean[] keepText;
+
+    private static class DefaultHolder {
+        static final LexerDFA INSTANCE = load(FilePathConfig.LEXER_SPEC_PATH);
+    }
+}
@@ -0,0 +1,34 @@
+package cn.edu.hitsz.compiler.lexer;
+
+/**
+ * 词法分析过程的跟踪监听者
+ * <br>
+ * 与 {@link cn.edu.hitsz.compiler.parser.ActionObserver} 类似, 该接口把调试输出从词法分析的主循环中解耦.
+ * 词法分析器只在注册了监听者时才会调用这些方法, 未注册时主循环中只有一次布尔判断, 不会构造任何调试字符串.
+ *
+ * @author hogan
+ * @see PrintingLexerTraceListener
+ */
+public interface LexerTraceListener {
+    /**
+     * 当自动机读入一个字符时会调用此函数
+     *
+     * @param state  读入前自动机所处的状态
+     * @param c      读入的字符
+     * @param buffer 当前的字符缓冲区
+     */
+    void whenRead(int state, char c, CharacterBuffer buffer);
+
+    /**
+     * 当识别出一个词法单元时会调用此函数
+     *
+     * @param state 识别时自动机所处的接受状态
+     * @param token 识别出的词法单元
+     */
+    void whenAccept(int state, Token token);
+
+    /**
+     * 当词法分析结束时会调用此函数
+     */
+    void whenDone();
+}
@@ -1,7 +1,9 @@
 package cn.edu.hitsz.compiler.lexer;
 
+import cn.edu.hitsz.compiler.Configs;
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.errors.ErrorDefination;
+import cn.edu.hitsz.compiler.jfr.StageEvent;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
@@ -18,17 +20,54 @@ import java.util.stream.StreamSupport;
  * @see TokenKind 词法单元类型的实现
  */
 
-public class LexicalAnalyzer {
-    private FileCharacterIterator iterator = null;
+public class LexicalAnalyzer implements AutoCloseable {
+    private CharacterSource source = null;
+    private CharacterBuffer iterator = null;
     private final List<Token> tokens = new LinkedList<>();
 
     private final SymbolTable symbolTable;
+    private final LexerDFA dfa;
+
+    private final List<LexerTraceListener> traceListeners = new ArrayList<>();
+    private boolean tracing = false;
+
+    private boolean streaming = false;
+    private boolean streamTaken = false;
 
 
     public LexicalAnalyzer(SymbolTable symbolTable) {
+        this(symbolTable, Configs.LEXER_TABLE_DRIVEN ? LexerDFA.getDefault() : null);
+    }
+
+    /**
+     * @param symbolTable 符号表
+     * @param dfa         表驱动分析使用的 DFA, 为 null 时使用手写的自动机
+     */
+    public LexicalAnalyzer(SymbolTable symbolTable, LexerDFA dfa) {
         this.symbolTable = symbolTable;
+        this.dfa = dfa;
+    }
+
+
+    /**
+     * 注册跟踪监听者, 未注册任何监听者时词法分析不产生调试输出
+     *
+     * @param listener 监听者
+     */
+    public void registerTraceListener(LexerTraceListener listener) {
+        traceListeners.add(listener);
+        tracing = true;
     }
 
+    /**
+     * 切换到按需分析模式: {@link #run()} 不再预先分析整个文件, {@link #getTokens()} 返回一个惰性的 token 序列,
+     * 每当使用者取下一个 token 时才识别它. 这样内存占用与输入长度无关, 语法分析也能在读完文件之前开始.
+     * <br>
+     * 该序列只能被遍历一次. 手写自动机不支持按需分析, 此时仍会分析完整个文件.
+     */
+    public void enableStreaming() {
+        streaming = dfa != null;
+    }
 
     /**
      * 从给予的路径中读取并加载文件内容
@@ -40,17 +79,158 @@ public class LexicalAnalyzer {
         // 可自由实现各类缓冲区
         // 或直接采用完整读入方法
         try {
-            iterator = FileCharacterIterator.build(path, 2);
+            loadSource(Configs.LEXER_NIO_SOURCE ? CharacterSource.mapped(path) : CharacterSource.lines(path));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 从给予的数据源中加载源代码, 例如 {@link CharacterSource#of(CharSequence)} 给出的内存中的源代码
+     *
+     * @param source 数据源
+     */
+    public void loadSource(CharacterSource source) {
+        closeSource();
+        this.source = source;
+        if (Configs.LEXER_RING_BUFFER) {
+            iterator = RingCharacterIterator.build(source, 2);
+        } else {
+            iterator = FileCharacterIterator.build(source, 2);
+        }
+    }
+
     /**
      * 执行词法分析, 准备好用于返回的 token 列表 <br>
      * 需要维护实验一所需的符号表条目, 而得在语法分析中才能确定的符号表条目的成员可以先设置为 null
      */
     public void run() {
+        if (streaming) {
+            return;
+        }
+
+        final var event = new StageEvent();
+        event.begin();
+        try {
+            if (dfa != null) {
+                runTableDriven();
+            } else {
+                runAutomaton();
+            }
+        } finally {
+            closeSource();
+        }
+        if (event.shouldCommit()) {
+            event.stage = StageEvent.LEXER;
+            event.items = tokens.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * 关闭数据源, 之后按需分析的 token 序列不能再继续读取
+     * <br>
+     * 预先分析整个文件, 或按需分析读到 EOF 或出错时数据源都会自动关闭; 按需分析时使用者提前停止读取 (如语法错误),
+     * 则需要调用该方法, 以免文件句柄泄漏. 重复调用没有影响.
+     */
+    @Override
+    public void close() {
+        closeSource();
+    }
+
+    /**
+     * 关闭数据源. 分析完成或中途出错时调用, 以免文件句柄泄漏
+     */
+    private void closeSource() {
+        if (source != null) {
+            source.close();
+            source = null;
+        }
+    }
+
+    private void runTableDriven() {
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.getKind() != TokenKind.eof());
+    }
+
+    /**
+     * 表驱动的词法分析: 按最长匹配原则识别下一个词法单元
+     *
+     * @return 识别出的词法单元, 读完文件时为 EOF
+     */
+    private Token nextToken() {
+        while (true) {
+            final var first = iterator.currentChar();
+            if (first == FCIData.DONE) {
+                break;
+            }
+
+            // 从起始状态出发一直转移到死状态, 记下最后一次经过接受状态时的规则与长度
+            var state = LexerDFA.START;
+            var rule = -1;
+            var length = 0;
+            var acceptState = LexerDFA.DEAD;
+            for (int i = 0; ; i++) {
+                final var c = iterator.currentChar(i);
+                if (tracing) {
+                    traceRead(state, c);
+                }
+                state = dfa.step(state, c);
+                if (state == LexerDFA.DEAD) {
+                    break;
+                }
+                final var accept = dfa.acceptRule(state);
+                if (accept >= 0) {
+                    rule = accept;
+                    length = i + 1;
+                    acceptState = state;
+                }
+            }
+
+            if (rule < 0) {
+                throw new RuntimeException(String.format(ErrorDefination.UNEXPECTED_CHARACTER, first));
+            }
+
+            if (dfa.isSkip(rule)) {
+                iterator.advance(length);
+                continue;
+            }
+
+            final var kind = dfa.kindOf(rule);
+            final Token token;
+            if (dfa.keepsText(rule)) {
+                final var text = new StringBuilder(length);
+                for (int i = 0; i < length; i++) {
+                    text.append(iterator.currentChar(i));
+                }
+                final var s = text.toString();
+                if ("id".equals(kind.getIdentifier()) && !symbolTable.has(s)) {
+                    symbolTable.add(s);
+                }
+                token = Token.normal(kind, s);
+            } else {
+                token = Token.simple(kind);
+            }
+            if (tracing) {
+                traceAccept(acceptState, token);
+            }
+            iterator.advance(length);
+            return token;
+        }
+
+        if (tracing) {
+            traceDone();
+        }
+        return Token.eof();
+    }
+
+    /**
+     * 手写自动机实现的词法分析
+     */
+    private void runAutomaton() {
         //  自动机实现的词法分析过程
         int state = 0;
         final var accepts = new HashSet<>(Arrays.asList(15, 17, 19, 20, 22, 23, 25, 26, 27, 28, 29, 30, 31, 32));
@@ -64,8 +244,10 @@ public class LexicalAnalyzer {
         while (iterator.hasNext()) {
             while (!accepts.contains(state) && iterator.hasNext()) {
                 final var c = iterator.current();
-                System.out.printf("[%2d] read: %s, buffer: %s\n", state, c == '\n' ? "\\n" : c, iterator.getBuffer().stream().map(a -> a == '\n' ? ' ' : a).map(Object::toString).reduce((a, b) -> a + b).orElseThrow());
-                boolean blank = c == ' ' || c == '\t' || c == '\n';
+                if (tracing) {
+                    traceRead(state, c);
+                }
+                boolean blank = c == ' ' || c == '\t' || c == '\n' || c == '\r';
                 boolean digital = '0' <= c && c <= '9';
                 boolean letter = ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z') || c == '_';
                 boolean semicolon = c == ';';
@@ -115,12 +297,17 @@ public class LexicalAnalyzer {
                         if (nextState == 14) {
                             idCode.append(c);
                         }
+                        break;
+                    case 16:
+                        if (nextState == 16) {
+                            number.append(c);
+                        }
+                        break;
                     default:
                         break;
                 }
                 if (accepts.contains(nextState)) {
-                    System.out.printf("accept [%d] id=%s, num=%s\n", nextState, idCode, number);
-                    tokens.add(switch (nextState) {
+                    final var token = switch (nextState) {
                         case 15 -> {
                             final var s = idCode.toString();
                             idCode.setLength(0);
@@ -130,9 +317,9 @@ public class LexicalAnalyzer {
                             yield keyWords.contains(s) ? Token.simple(s) : Token.normal("id", s);
                         }
                         case 17 -> {
-                            final var token = Token.normal("IntConst", number.toString());
+                            final var intConst = Token.normal("IntConst", number.toString());
                             number.setLength(0);
-                            yield token;
+                            yield intConst;
                         }
                         case 19 -> Token.simple("**");
                         case 20 -> Token.simple("*");
@@ -146,11 +333,18 @@ public class LexicalAnalyzer {
                         case 31 -> Token.simple("/");
                         case 32 -> Token.simple(",");
                         default -> throw new RuntimeException(String.format(ErrorDefination.NO_SUCH_STATE, state));
-                    });
+                    };
+                    if (tracing) {
+                        traceAccept(nextState, token);
+                    }
+                    tokens.add(token);
                 }
                 if (nextState != 28 && semicolon) {
-                    System.out.printf("accept [%d] Semicolon\n", nextState);
-                    tokens.add(Token.simple("Semicolon"));
+                    final var token = Token.simple("Semicolon");
+                    if (tracing) {
+                        traceAccept(nextState, token);
+                    }
+                    tokens.add(token);
                 }
                 iterator.next();
                 state = nextState;
@@ -159,10 +353,30 @@ public class LexicalAnalyzer {
             state = 0;
         }
 
-        System.out.println("accept [$] Done");
+        if (tracing) {
+            traceDone();
+        }
         tokens.add(Token.eof());
     }
 
+    private void traceRead(int state, char c) {
+        for (final var listener : traceListeners) {
+            listener.whenRead(state, c, iterator);
+        }
+    }
+
+    private void traceAccept(int state, Token token) {
+        for (final var listener : traceListeners) {
+            listener.whenAccept(state, token);
+        }
+    }
+
+    private void traceDone() {
+        for (final var listener : traceListeners) {
+            listener.whenDone();
+        }
+    }
+
     /**
      * 获得词法分析的结果, 保证在调用了 run 方法之后调用
      *
@@ -173,9 +387,47 @@ public class LexicalAnalyzer {
         // 词法分析过程可以使用 Stream 或 Iterator 实现按需分析
         // 亦可以直接分析完整个文件
         // 总之实现过程能转化为一列表即可
+        if (!streaming) {
+            return tokens;
+        }
 
-        return tokens;
+        return () -> {
+            if (streamTaken) {
+                throw new RuntimeException("Token stream can only be iterated once");
+            }
+            streamTaken = true;
+            return new TokenStream();
+        };
+    }
+
+    /**
+     * 按需分析模式下的 token 迭代器, 最后一个元素是 EOF
+     */
+    private class TokenStream implements Iterator<Token> {
+        private boolean finished = false;
 
+        @Override
+        public boolean hasNext() {
+            return !finished;
+        }
+
+        @Override
+        public Token next() {
+            if (finished) {
+                throw new NoSuchElementException();
+            }
+            var failed = true;
+            try {
+                final var token = nextToken();
+                finished = token.getKind() == TokenKind.eof();
+                failed = false;
+                return token;
+            } finally {
+                if (failed || finished) {
+                    closeSource();
+                }
+            }
+        }
     }
 
     public void dumpTokens(String path) {
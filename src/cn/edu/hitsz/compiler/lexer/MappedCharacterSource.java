@@ -0,0 +1,120 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 基于 NIO 的数据源
+ * <br>
+ * 以 {@link FileChannel#map} 分窗口映射源文件, 用 {@link CharsetDecoder} 将字节增量解码到一块复用的 CharBuffer 中,
+ * 读取过程中不会为每行构造 String. 与 {@link FCIData} 不同, 换行符会原样提供给词法分析.
+ *
+ * @author hogan
+ */
+public class MappedCharacterSource implements CharacterSource {
+    private final static long MAP_WINDOW_SIZE = 64L << 20;
+    private final static int DECODE_CHUNK_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    private ByteBuffer window;
+    private long windowOffset = 0;
+    private final CharBuffer chars = CharBuffer.allocate(DECODE_CHUNK_SIZE).flip();
+    private boolean flushed = false;
+    private boolean done = false;
+
+    MappedCharacterSource(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        mapWindow(0);
+    }
+
+    @Override
+    public char current() {
+        if (!chars.hasRemaining() && !refill()) {
+            return DONE;
+        }
+        return chars.get(chars.position());
+    }
+
+    @Override
+    public MappedCharacterSource next() {
+        if (chars.hasRemaining() || refill()) {
+            chars.position(chars.position() + 1);
+        }
+        return this;
+    }
+
+    /**
+     * 解码下一块字符
+     *
+     * @return 是否还有字符可读
+     */
+    private boolean refill() {
+        if (done) {
+            return false;
+        }
+
+        chars.clear();
+        try {
+            while (chars.position() == 0) {
+                if (flushed) {
+                    done = true;
+                    close();
+                    break;
+                }
+
+                final var lastWindow = windowOffset + window.limit() >= fileSize;
+                final var result = decoder.decode(window, chars, lastWindow);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (chars.position() > 0) {
+                    break;
+                }
+
+                if (lastWindow) {
+                    decoder.flush(chars);
+                    flushed = true;
+                } else {
+                    // 窗口末尾可能残留半个多字节字符, 从未解码的位置重新映射
+                    mapWindow(windowOffset + window.position());
+                }
+            }
+        } catch (CharacterCodingException e) {
+            throw new RuntimeException("Illegal UTF-8 input near byte " + (windowOffset + window.position()), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void mapWindow(long offset) throws IOException {
+        final var size = Math.min(MAP_WINDOW_SIZE, fileSize - offset);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        windowOffset = offset;
+    }
+}
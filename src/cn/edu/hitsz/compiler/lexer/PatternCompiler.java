@@ -0,0 +1,419 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 将词法规则的模式串编译为 DFA 转移表
+ * <br>
+ * 模式串支持的语法为正则表达式的一个子集: 字面字符, 转义 ({@code \t \n \r} 以及任意被转义的字面字符), 字符类
+ * ({@code [a-z_]}, {@code [^...]}), {@code .}, 分组, 选择 {@code |} 以及 {@code * + ?} 三种重复.
+ * 模式只能描述 ASCII 字符, 其余字符都归入 0 号字符类, 该字符类上没有任何转移.
+ * <br>
+ * 编译分三步: 先按 Thompson 构造法为每条规则构造 NFA 并以一个公共起点连接; 再按各字符所在的 NFA 边集合划分字符类;
+ * 最后用子集构造法得到 DFA. DFA 的 0 号状态为死状态, 1 号状态为起始状态, 多条规则同时接受时取规则序号最小者.
+ *
+ * @author hogan
+ * @see LexerDFA
+ */
+class PatternCompiler {
+    static final int ALPHABET_SIZE = 128;
+
+    /**
+     * @param pattern 模式串
+     * @return 该模式是否只匹配唯一的字面串 (不含字符类与重复)
+     */
+    static boolean isLiteral(String pattern) {
+        return new Parser(pattern).parse().isLiteral();
+    }
+
+    /**
+     * 编译一组规则
+     *
+     * @param patterns 按优先级从高到低排列的模式串
+     * @return 编译结果
+     */
+    static LexerDFA.Tables compile(List<String> patterns) {
+        final var nfa = new Nfa();
+        final var start = nfa.newNode();
+        for (int rule = 0; rule < patterns.size(); rule++) {
+            final var fragment = new Parser(patterns.get(rule)).parse().build(nfa);
+            nfa.epsilon(start, fragment.begin);
+            nfa.nodes.get(fragment.end).acceptRule = rule;
+        }
+
+        // 划分字符类: 在同一组 NFA 边上出现的字符属于同一类, 不出现在任何边上的字符属于 0 号类
+        final var charClass = new int[ALPHABET_SIZE];
+        final var signatures = new HashMap<BitSet, Integer>();
+        final var representatives = new ArrayList<Character>();
+        signatures.put(new BitSet(), 0);
+        representatives.add((char) 0);
+        for (char c = 0; c < ALPHABET_SIZE; c++) {
+            final var signature = new BitSet();
+            for (int idx = 0; idx < nfa.nodes.size(); idx++) {
+                final var set = nfa.nodes.get(idx).charSet;
+                if (set != null && set.get(c)) {
+                    signature.set(idx);
+                }
+            }
+            final var cls = signatures.computeIfAbsent(signature, key -> representatives.size());
+            if (cls == representatives.size()) {
+                representatives.add(c);
+            }
+            charClass[c] = cls;
+        }
+        final var classCount = representatives.size();
+
+        // 子集构造
+        final var dfaStates = new ArrayList<BitSet>();
+        final var indexOf = new HashMap<BitSet, Integer>();
+        final var transitions = new ArrayList<int[]>();
+        final var acceptRules = new ArrayList<Integer>();
+
+        // 0 号死状态
+        dfaStates.add(new BitSet());
+        indexOf.put(new BitSet(), 0);
+        transitions.add(new int[classCount]);
+        acceptRules.add(-1);
+
+        final var startSet = new BitSet();
+        startSet.set(start);
+        final var initial = nfa.closure(startSet);
+        dfaStates.add(initial);
+        indexOf.put(initial, 1);
+        transitions.add(new int[classCount]);
+        acceptRules.add(nfa.acceptRuleOf(initial));
+
+        final var unexpanded = new ArrayDeque<Integer>();
+        unexpanded.add(1);
+        while (!unexpanded.isEmpty()) {
+            final var from = unexpanded.pollFirst();
+            final var set = dfaStates.get(from);
+            for (int cls = 1; cls < classCount; cls++) {
+                final char c = representatives.get(cls);
+                final var moved = new BitSet();
+                for (int idx = set.nextSetBit(0); idx >= 0; idx = set.nextSetBit(idx + 1)) {
+                    final var node = nfa.nodes.get(idx);
+                    if (node.charSet != null && node.charSet.get(c)) {
+                        moved.set(node.target);
+                    }
+                }
+                final var to = nfa.closure(moved);
+                var toIndex = indexOf.get(to);
+                if (toIndex == null) {
+                    toIndex = dfaStates.size();
+                    dfaStates.add(to);
+                    indexOf.put(to, toIndex);
+                    transitions.add(new int[classCount]);
+                    acceptRules.add(nfa.acceptRuleOf(to));
+                    unexpanded.addLast(toIndex);
+                }
+                transitions.get(from)[cls] = toIndex;
+            }
+        }
+
+        final var stateCount = dfaStates.size();
+        final var table = new int[stateCount * classCount];
+        final var accept = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            System.arraycopy(transitions.get(state), 0, table, state * classCount, classCount);
+            accept[state] = acceptRules.get(state);
+        }
+        return new LexerDFA.Tables(table, classCount, charClass, accept);
+    }
+
+    //==================== NFA ==============================//
+
+    private static class Node {
+        // 字符边: 当前字符属于 charSet 时转移到 target
+        BitSet charSet = null;
+        int target = -1;
+        final List<Integer> epsilons = new ArrayList<>();
+        int acceptRule = -1;
+    }
+
+    private record Fragment(int begin, int end) {
+    }
+
+    private static class Nfa {
+        final List<Node> nodes = new ArrayList<>();
+
+        int newNode() {
+            nodes.add(new Node());
+            return nodes.size() - 1;
+        }
+
+        void epsilon(int from, int to) {
+            nodes.get(from).epsilons.add(to);
+        }
+
+        BitSet closure(BitSet states) {
+            final var result = (BitSet) states.clone();
+            final var unexpanded = new ArrayDeque<Integer>();
+            states.stream().forEach(unexpanded::add);
+            while (!unexpanded.isEmpty()) {
+                for (final var to : nodes.get(unexpanded.pollFirst()).epsilons) {
+                    if (!result.get(to)) {
+                        result.set(to);
+                        unexpanded.add(to);
+                    }
+                }
+            }
+            return result;
+        }
+
+        int acceptRuleOf(BitSet states) {
+            var rule = -1;
+            for (int idx = states.nextSetBit(0); idx >= 0; idx = states.nextSetBit(idx + 1)) {
+                final var accept = nodes.get(idx).acceptRule;
+                if (accept >= 0 && (rule < 0 || accept < rule)) {
+                    rule = accept;
+                }
+            }
+            return rule;
+        }
+    }
+
+    //==================== 模式串语法树 ==============================//
+
+    private interface Regex {
+        Fragment build(Nfa nfa);
+
+        default boolean isLiteral() {
+            return false;
+        }
+    }
+
+    private record CharSetRegex(BitSet set, boolean single) implements Regex {
+        @Override
+        public Fragment build(Nfa nfa) {
+            final var begin = nfa.newNode();
+            final var end = nfa.newNode();
+            nfa.nodes.get(begin).charSet = set;
+            nfa.nodes.get(begin).target = end;
+            return new Fragment(begin, end);
+        }
+
+        @Override
+        public boolean isLiteral() {
+            return single;
+        }
+    }
+
+    private record ConcatRegex(List<Regex> parts) implements Regex {
+        @Override
+        public Fragment build(Nfa nfa) {
+            if (parts.isEmpty()) {
+                final var node = nfa.newNode();
+                return new Fragment(node, node);
+            }
+            Fragment result = null;
+            for (final var part : parts) {
+                final var fragment = part.build(nfa);
+                if (result == null) {
+                    result = fragment;
+                } else {
+                    nfa.epsilon(result.end, fragment.begin);
+                    result = new Fragment(result.begin, fragment.end);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public boolean isLiteral() {
+            return parts.stream().allMatch(Regex::isLiteral);
+        }
+    }
+
+    private record AltRegex(List<Regex> options) implements Regex {
+        @Override
+        public Fragment build(Nfa nfa) {
+            final var begin = nfa.newNode();
+            final var end = nfa.newNode();
+            for (final var option : options) {
+                final var fragment = option.build(nfa);
+                nfa.epsilon(begin, fragment.begin);
+                nfa.epsilon(fragment.end, end);
+            }
+            return new Fragment(begin, end);
+        }
+    }
+
+    /**
+     * @param inner    被重复的表达式
+     * @param optional 是否可以出现 0 次
+     * @param repeated 是否可以出现多次
+     */
+    private record RepeatRegex(Regex inner, boolean optional, boolean repeated) implements Regex {
+        @Override
+        public Fragment build(Nfa nfa) {
+            final var begin = nfa.newNode();
+            final var end = nfa.newNode();
+            final var fragment = inner.build(nfa);
+            nfa.epsilon(begin, fragment.begin);
+            nfa.epsilon(fragment.end, end);
+            if (optional) {
+                nfa.epsilon(begin, end);
+            }
+            if (repeated) {
+                nfa.epsilon(fragment.end, fragment.begin);
+            }
+            return new Fragment(begin, end);
+        }
+    }
+
+    /**
+     * 递归下降的模式串解析器
+     */
+    private static class Parser {
+        private final String pattern;
+        private int pos = 0;
+
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        Regex parse() {
+            final var result = parseAlt();
+            if (pos != pattern.length()) {
+                throw error("Unexpected '%c'".formatted(pattern.charAt(pos)));
+            }
+            return result;
+        }
+
+        private Regex parseAlt() {
+            final var options = new ArrayList<Regex>();
+            options.add(parseConcat());
+            while (peek('|')) {
+                pos++;
+                options.add(parseConcat());
+            }
+            return options.size() == 1 ? options.get(0) : new AltRegex(options);
+        }
+
+        private Regex parseConcat() {
+            final var parts = new ArrayList<Regex>();
+            while (pos < pattern.length() && !peek('|') && !peek(')')) {
+                parts.add(parseRepeat());
+            }
+            return parts.size() == 1 ? parts.get(0) : new ConcatRegex(parts);
+        }
+
+        private Regex parseRepeat() {
+            var result = parseAtom();
+            while (pos < pattern.length()) {
+                final var c = pattern.charAt(pos);
+                if (c == '*') {
+                    result = new RepeatRegex(result, true, true);
+                } else if (c == '+') {
+                    result = new RepeatRegex(result, false, true);
+                } else if (c == '?') {
+                    result = new RepeatRegex(result, true, false);
+                } else {
+                    break;
+                }
+                pos++;
+            }
+            return result;
+        }
+
+        private Regex parseAtom() {
+            final var c = pattern.charAt(pos++);
+            return switch (c) {
+                case '(' -> {
+                    final var inner = parseAlt();
+                    if (!peek(')')) {
+                        throw error("Missing ')'");
+                    }
+                    pos++;
+                    yield inner;
+                }
+                case '[' -> parseClass();
+                case '.' -> {
+                    final var set = new BitSet(ALPHABET_SIZE);
+                    set.set(0, ALPHABET_SIZE);
+                    set.clear('\n');
+                    yield new CharSetRegex(set, false);
+                }
+                case '*', '+', '?', ')' -> throw error("Unexpected '%c'".formatted(c));
+                case '\\' -> single(parseEscape());
+                default -> single(checkAscii(c));
+            };
+        }
+
+        private Regex parseClass() {
+            final var set = new BitSet(ALPHABET_SIZE);
+            final var negate = peek('^');
+            if (negate) {
+                pos++;
+            }
+            while (!peek(']')) {
+                if (pos >= pattern.length()) {
+                    throw error("Missing ']'");
+                }
+                final var low = nextClassChar();
+                if (peek('-') && pos + 1 < pattern.length() && pattern.charAt(pos + 1) != ']') {
+                    pos++;
+                    final var high = nextClassChar();
+                    if (high < low) {
+                        throw error("Illegal range %c-%c".formatted(low, high));
+                    }
+                    set.set(low, high + 1);
+                } else {
+                    set.set(low);
+                }
+            }
+            pos++;
+            if (negate) {
+                set.flip(0, ALPHABET_SIZE);
+            }
+            return new CharSetRegex(set, false);
+        }
+
+        private char nextClassChar() {
+            final var c = pattern.charAt(pos++);
+            return c == '\\' ? parseEscape() : checkAscii(c);
+        }
+
+        private char parseEscape() {
+            if (pos >= pattern.length()) {
+                throw error("Dangling '\\'");
+            }
+            final var c = pattern.charAt(pos++);
+            return switch (c) {
+                case 't' -> '\t';
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                default -> checkAscii(c);
+            };
+        }
+
+        private Regex single(char c) {
+            final var set = new BitSet(ALPHABET_SIZE);
+            set.set(c);
+            return new CharSetRegex(set, true);
+        }
+
+        private boolean peek(char c) {
+            return pos < pattern.length() && pattern.charAt(pos) == c;
+        }
+
+        private char checkAscii(char c) {
+            if (c >= ALPHABET_SIZE) {
+                throw error("Only ASCII characters are supported");
+            }
+            return c;
+        }
+
+        private RuntimeException error(String reason) {
+            return new RuntimeException("Illegal lexer pattern `%s` at %d: %s".formatted(pattern, pos, reason));
+        }
+    }
+
+    private PatternCompiler() {
+    }
+}
@@ -0,0 +1,39 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.PrintStream;
+
+/**
+ * 将词法分析过程输出到控制台的跟踪监听者
+ *
+ * @author hogan
+ */
+public class PrintingLexerTraceListener implements LexerTraceListener {
+    private final PrintStream out;
+
+    public PrintingLexerTraceListener() {
+        this(System.out);
+    }
+
+    public PrintingLexerTraceListener(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void whenRead(int state, char c, CharacterBuffer buffer) {
+        final var text = new StringBuilder();
+        for (final var a : buffer.getBuffer()) {
+            text.append(a == '\n' ? ' ' : a);
+        }
+        out.printf("[%2d] read: %s, buffer: %s\n", state, c == '\n' ? "\\n" : c, text);
+    }
+
+    @Override
+    public void whenAccept(int state, Token token) {
+        out.printf("accept [%d] %s\n", state, token);
+    }
+
+    @Override
+    public void whenDone() {
+        out.println("accept [$] Done");
+    }
+}
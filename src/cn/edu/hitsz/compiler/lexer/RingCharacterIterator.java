@@ -0,0 +1,192 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 基于 char[] 环形数组的字符缓冲区
+ * <br>
+ * 与 {@link FileCharacterIterator} 语义一致: 当前字符之前保留 bufferSize 个历史字符供 {@link #last(int)} 使用,
+ * 当前字符之后按需读入供 {@link #current(int)} 使用. 所有位置都以绝对下标记录, 与掩码取与后即为数组下标,
+ * 因此访问均为 O(1) 且不产生装箱; 向前看超出容量时数组按两倍扩容.
+ *
+ * @author hogan
+ */
+public class RingCharacterIterator implements CharacterBuffer {
+    private final CharacterSource dataIterator;
+    private final int historySize;
+
+    private char[] ring;
+    private int mask;
+    /**
+     * 当前字符的绝对下标
+     */
+    private long position;
+    /**
+     * 已读入的字符数, 也即下一个待读入字符的绝对下标
+     */
+    private long loaded;
+    private boolean exhausted = false;
+
+    private final static int MIN_CAPACITY = 64;
+
+    RingCharacterIterator(CharacterSource dataIterator, int bufferSize) {
+        this.dataIterator = dataIterator;
+        this.historySize = bufferSize;
+        this.ring = new char[capacityFor(2 * bufferSize + 1)];
+        this.mask = ring.length - 1;
+        // 起始处的历史字符全部为 DONE, 与链表缓冲区的初始状态相同
+        for (int i = 0; i < bufferSize; i++) {
+            ring[i] = FCIData.DONE;
+        }
+        this.position = bufferSize;
+        this.loaded = bufferSize;
+    }
+
+    static public RingCharacterIterator build(String path) throws IOException {
+        return RingCharacterIterator.build(path, 0);
+    }
+
+    static public RingCharacterIterator build(String path, int bufferSize) throws IOException {
+        return RingCharacterIterator.build(CharacterSource.lines(path), bufferSize);
+    }
+
+    static public RingCharacterIterator build(CharacterSource source, int bufferSize) {
+        return new RingCharacterIterator(source, bufferSize);
+    }
+
+    @Override
+    public Iterator<Character> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return currentChar() != FCIData.DONE;
+    }
+
+    /**
+     * 前进一个字符
+     *
+     * @return 前进后的当前字符, 与缓冲模式下的 {@link FileCharacterIterator#next()} 一致
+     */
+    @Override
+    public Character next() {
+        position++;
+        return currentChar();
+    }
+
+    @Override
+    public void advance() {
+        position++;
+    }
+
+    @Override
+    public void advance(int count) {
+        position += count;
+    }
+
+    @Override
+    public Character current() {
+        return currentChar();
+    }
+
+    @Override
+    public Character current(int index) {
+        return currentChar(index);
+    }
+
+    @Override
+    public Character last(int index) {
+        return lastChar(index);
+    }
+
+    @Override
+    public char currentChar() {
+        if (position >= loaded) {
+            fill(position);
+        }
+        return ring[(int) (position & mask)];
+    }
+
+    @Override
+    public char currentChar(int index) {
+        final var target = position + index;
+        if (target >= loaded) {
+            fill(target);
+        }
+        return ring[(int) (target & mask)];
+    }
+
+    @Override
+    public char lastChar(int index) {
+        assert index <= historySize;
+        return ring[(int) ((position - index) & mask)];
+    }
+
+    /**
+     * @return 缓冲区内从最早的历史字符到最后读入的字符组成的只读视图
+     */
+    @Override
+    public List<Character> getBuffer() {
+        final var begin = position - historySize;
+        final var size = (int) (loaded - begin);
+        return new AbstractList<>() {
+            @Override
+            public Character get(int index) {
+                return ring[(int) ((begin + index) & mask)];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * 读入字符直至绝对下标 target 可用
+     */
+    private void fill(long target) {
+        while (loaded <= target) {
+            if (loaded - (position - historySize) >= ring.length) {
+                grow();
+            }
+            ring[(int) (loaded & mask)] = read();
+            loaded++;
+        }
+    }
+
+    private char read() {
+        if (exhausted) {
+            return FCIData.DONE;
+        }
+        final var c = dataIterator.current();
+        if (c == FCIData.DONE) {
+            exhausted = true;
+        } else {
+            dataIterator.next();
+        }
+        return c;
+    }
+
+    private void grow() {
+        final var newRing = new char[ring.length * 2];
+        final var newMask = newRing.length - 1;
+        for (var abs = position - historySize; abs < loaded; abs++) {
+            newRing[(int) (abs & newMask)] = ring[(int) (abs & mask)];
+        }
+        ring = newRing;
+        mask = newMask;
+    }
+
+    private static int capacityFor(int size) {
+        var capacity = MIN_CAPACITY;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,30 @@
+package cn.edu.hitsz.compiler.lexer;
+
+/**
+ * 内存中的源代码, 保留换行符
+ * <br>
+ * 编译服务器收到的源代码不落盘, 直接以字符串的形式交给词法分析
+ *
+ * @author hogan
+ */
+class StringCharacterSource implements CharacterSource {
+    private final CharSequence text;
+    private int position = 0;
+
+    StringCharacterSource(CharSequence text) {
+        this.text = text;
+    }
+
+    @Override
+    public char current() {
+        return position < text.length() ? text.charAt(position) : DONE;
+    }
+
+    @Override
+    public CharacterSource next() {
+        if (position < text.length()) {
+            position++;
+        }
+        return this;
+    }
+}
@@ -29,17 +29,29 @@ import java.util.Map;
  */
 public class TokenKind extends Term {
     // 允许用作 TokenKind 的 id 的字符串集合
-    private static final Map<String, TokenKind> allowed = new HashMap<>();
+    // 读取完成后整体替换为不可变的 Map 再发布, 之后各线程只读不写
+    private static volatile Map<String, TokenKind> allowed = Collections.emptyMap();
     private static final TokenKind eof = new TokenKind("$", -1);
 
     /**
      * 从码点文件中读取允许的标识符集合
+     * <br>
+     * 该方法是幂等且线程安全的: 只有第一次调用会读取码点文件, 之后的调用直接返回, 所以每次编译都可以放心地调用它.
      */
     public static void loadTokenKinds() {
         if (!allowed.isEmpty()) {
-            throw new RuntimeException("Can not set allowed twice");
+            return;
         }
 
+        synchronized (TokenKind.class) {
+            if (allowed.isEmpty()) {
+                allowed = Collections.unmodifiableMap(readTokenKinds());
+            }
+        }
+    }
+
+    private static Map<String, TokenKind> readTokenKinds() {
+        final var allowed = new HashMap<String, TokenKind>();
         final var lines = FileUtils.readLines(FilePathConfig.CODING_MAP_PATH);
         for (final var line : lines) {
             // 码点文件每行形如:
@@ -54,6 +66,7 @@ public class TokenKind extends Term {
 
         // EOF
         allowed.put("$", eof);
+        return allowed;
     }
 
     /**
@@ -61,7 +74,8 @@ public class TokenKind extends Term {
      * @return 该标识符是否被允许作为 TokenKind 的标识符
      */
     public static boolean isAllowed(String id) {
-        if (allowed == null) {
+        final var allowed = TokenKind.allowed;
+        if (allowed.isEmpty()) {
             throw new RuntimeException("Empty allowed");
         }
 
@@ -72,7 +86,7 @@ public class TokenKind extends Term {
      * @return 一个标识符到 TokenKind 的 Map, 其键集包含了所有允许的标识符
      */
     public static Map<String, TokenKind> allAllowedTokenKinds() {
-        return Collections.unmodifiableMap(allowed);
+        return allowed;
     }
 
     /**
@@ -81,11 +95,12 @@ public class TokenKind extends Term {
      * @throws RuntimeException 码点文件尚未被读取, 或该标识符不被允许作为 TokenKind 的标识符
      */
     public static TokenKind fromString(String id) {
-        if (allowed == null || !allowed.containsKey(id)) {
+        final var kind = allowed.get(id);
+        if (kind == null) {
             throw new RuntimeException("Illegal Identifier");
         }
 
-        return allowed.get(id);
+        return kind;
     }
 
     /**
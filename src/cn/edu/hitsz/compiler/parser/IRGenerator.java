@@ -6,7 +6,10 @@ import cn.edu.hitsz.compiler.errors.ErrorDefination;
 import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.IRVariableTable;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionBuffer;
+import cn.edu.hitsz.compiler.ir.TempAllocator;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
@@ -59,7 +62,18 @@ public class IRGenerator implements ActionObserver {
 
     private SymbolTable symbolTable = null;
     private final ShiftStack shiftStack = new ShiftStack();
-    private final List<Instruction> code = new LinkedList<>();
+    private final List<Instruction> code = Configs.IR_COMPACT ? new InstructionBuffer() : new LinkedList<>();
+    private final TempAllocator temps;
+    private final IRVariableTable variables;
+
+    /**
+     * @param temps     本次编译的临时变量分配器
+     * @param variables 本次编译的具名 IR 变量表
+     */
+    public IRGenerator(TempAllocator temps, IRVariableTable variables) {
+        this.temps = temps;
+        this.variables = variables;
+    }
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
@@ -81,7 +95,7 @@ public class IRGenerator implements ActionObserver {
                     throw new RuntimeException(ErrorDefination.NO_SYMBOL.formatted(id.getToken().getText()));
                 }
                 if (id.getAddr() == null) {
-                    id.setAddr(IRVariable.named(id.getToken().getText()));
+                    id.setAddr(variables.named(id.getToken().getText()));
                 }
                 assert (id.getAddr().isIRVariable());
                 if (Configs.DEBUG) {
@@ -96,7 +110,7 @@ public class IRGenerator implements ActionObserver {
                 var plus = shiftStack.pop();
                 assert (Objects.equals(plus.getToken().getKind().getTermName(), "+"));
                 var e = shiftStack.pop();
-                var result = IRVariable.temp();
+                var result = temps.newTemp();
                 var insn = Instruction.createAdd(result, a.getAddr(), e.getAddr());
                 code.add(insn);
                 shiftStack.push(e.setAddr(result));
@@ -107,7 +121,7 @@ public class IRGenerator implements ActionObserver {
                 var minus = shiftStack.pop();
                 assert (Objects.equals(minus.getToken().getKind().getTermName(), "-"));
                 var e = shiftStack.pop();
-                var result = IRVariable.temp();
+                var result = temps.newTemp();
                 var insn = Instruction.createSub(result, e.getAddr(), a.getAddr());
                 code.add(insn);
                 shiftStack.push(e.setAddr(result));
@@ -118,10 +132,10 @@ public class IRGenerator implements ActionObserver {
                 var mul = shiftStack.pop();
                 assert (Objects.equals(mul.getToken().getKind().getTermName(), "*"));
                 var a = shiftStack.pop();
-                var result = IRVariable.temp();
+                var result = temps.newTemp();
                 if (b.addr.isImmediate()) {
                     // there is no muli, so create template variable to hold imm value
-                    var temp = IRVariable.temp();
+                    var temp = temps.newTemp();
                     code.add(Instruction.createMov(temp, b.getAddr()));
                     var insn = Instruction.createMul(result, a.getAddr(), temp);
                     code.add(insn);
@@ -151,7 +165,7 @@ public class IRGenerator implements ActionObserver {
                 if (!symbolTable.has(id.getToken().getText())) {
                     throw new RuntimeException(ErrorDefination.NO_SYMBOL.formatted(id.getToken().getText()));
                 }
-                var variable = IRVariable.named(symbolTable.get(id.getToken().getText()).getText());
+                var variable = variables.named(symbolTable.get(id.getToken().getText()).getText());
                 shiftStack.push(new InfoToken(id.getToken()).setAddr(variable));
             }
             // B -> IntConst;
@@ -178,6 +192,9 @@ public class IRGenerator implements ActionObserver {
     @Override
     public void whenAccept(Status currentStatus) {
         shiftStack.clear();
+        if (code instanceof InstructionBuffer buffer) {
+            buffer.trimToSize();
+        }
         //throw new NotImplementedException();
     }
 
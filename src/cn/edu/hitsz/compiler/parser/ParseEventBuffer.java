@@ -0,0 +1,101 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
+
+import java.util.Arrays;
+
+/**
+ * LR 驱动程序产生的分析事件缓冲区
+ * <br>
+ * 驱动程序不再在每次动作时逐个调用观察者, 而是将动作以紧凑的形式追加到该缓冲区中, 缓冲区满或分析结束时再整批交给观察者.
+ * 每个事件占用 records 中的两个 int: 第一个的低 2 位为事件种类, 其余位为状态序号; 第二个为规约的产生式 index.
+ * 移入事件的词法单元保存在平行的 tokens 数组中.
+ * <br>
+ * 事件中记录的状态与直接调用观察者时传入的状态相同: 移入为移入后的状态, 规约为弹出产生式体之后栈顶的状态, 接受为当前状态.
+ *
+ * @author hogan
+ * @see SyntaxAnalyzer
+ */
+final class ParseEventBuffer {
+    private static final int SHIFT = 0;
+    private static final int REDUCE = 1;
+    private static final int ACCEPT = 2;
+
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    private final int[] records;
+    private final Token[] tokens;
+    private int size = 0;
+
+    ParseEventBuffer(int capacity) {
+        this.records = new int[capacity * 2];
+        this.tokens = new Token[capacity];
+    }
+
+    private ParseEventBuffer(int[] records, Token[] tokens, int size) {
+        this.records = records;
+        this.tokens = tokens;
+        this.size = size;
+    }
+
+    void appendShift(int state, Token token) {
+        tokens[size] = token;
+        append(SHIFT, state, 0);
+    }
+
+    void appendReduce(int state, int production) {
+        append(REDUCE, state, production);
+    }
+
+    void appendAccept(int state) {
+        append(ACCEPT, state, 0);
+    }
+
+    private void append(int kind, int state, int argument) {
+        records[size * 2] = (state << KIND_BITS) | kind;
+        records[size * 2 + 1] = argument;
+        size++;
+    }
+
+    boolean isFull() {
+        return size == tokens.length;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        Arrays.fill(tokens, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @return 当前内容的一份拷贝, 用于交给其它线程上的观察者
+     */
+    ParseEventBuffer copy() {
+        return new ParseEventBuffer(
+            Arrays.copyOf(records, size * 2), Arrays.copyOf(tokens, size), size);
+    }
+
+    /**
+     * 按顺序将缓冲区中的所有事件交给一个观察者
+     *
+     * @param observer 观察者
+     * @param table    产生事件的分析表, 用于还原状态与产生式
+     */
+    void replay(ActionObserver observer, ParseTable table) {
+        for (int idx = 0; idx < size; idx++) {
+            final var head = records[idx * 2];
+            final var status = table.status(head >>> KIND_BITS);
+            switch (head & KIND_MASK) {
+                case SHIFT -> observer.whenShift(status, tokens[idx]);
+                case REDUCE -> observer.whenReduce(status, table.production(records[idx * 2 + 1]));
+                case ACCEPT -> observer.whenAccept(status);
+                default -> throw new RuntimeException("Unknown parse event: " + head);
+            }
+        }
+    }
+}
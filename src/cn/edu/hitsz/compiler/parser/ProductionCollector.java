@@ -29,7 +29,14 @@ public class ProductionCollector implements ActionObserver {
      * @param path 文件路径
      */
     public void dumpToFile(String path) {
-        FileUtils.writeLines(path, reducedProductions.stream().map(Production::toString).toList());
+        FileUtils.writeLines(path, toLines());
+    }
+
+    /**
+     * @return 按规约顺序排列的产生式, 每个产生式一行
+     */
+    public List<String> toLines() {
+        return reducedProductions.stream().map(Production::toString).toList();
     }
 
     @Override
@@ -0,0 +1,170 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.Configs;
+import cn.edu.hitsz.compiler.errors.ErrorDefination;
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.IRVariableTable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionBuffer;
+import cn.edu.hitsz.compiler.ir.TempAllocator;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.SourceCodeType;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 将语义分析与 IR 生成合并为一趟的观察者
+ * <br>
+ * {@link SemanticAnalyzer} 与 {@link IRGenerator} 各自维护自己的栈, 每次移入与规约都要在三个栈上重复压栈弹栈.
+ * 该类用一个共享的值栈完成两者的工作: 栈的每一格对应一个文法符号, 同时记录其词法单元, IR 地址与源语言类型这三个属性,
+ * 三个属性分别存放在三个平行数组中, 压栈弹栈只是移动栈顶指针. 规约时按产生式体的长度弹栈, 再压入产生式头的属性.
+ * <br>
+ * 该类的输出 (符号表中的类型与 IR) 与分别注册 SemanticAnalyzer 和 IRGenerator 时相同, 二者不应同时注册.
+ *
+ * @see SemanticAnalyzer
+ * @see IRGenerator
+ */
+public class SemanticIRGenerator implements ActionObserver {
+    private SymbolTable symbolTable = null;
+    private final List<Instruction> code = Configs.IR_COMPACT ? new InstructionBuffer() : new ArrayList<>();
+
+    private Token[] tokens = new Token[INITIAL_STACK_SIZE];
+    private IRValue[] addrs = new IRValue[INITIAL_STACK_SIZE];
+    private SourceCodeType[] types = new SourceCodeType[INITIAL_STACK_SIZE];
+    private int top = -1;
+
+    private static final int INITIAL_STACK_SIZE = 64;
+
+    private final TempAllocator temps;
+    private final IRVariableTable variables;
+
+    /**
+     * @param temps     本次编译的临时变量分配器
+     * @param variables 本次编译的具名 IR 变量表
+     */
+    public SemanticIRGenerator(TempAllocator temps, IRVariableTable variables) {
+        this.temps = temps;
+        this.variables = variables;
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, Token currentToken) {
+        push(currentToken, null, null);
+    }
+
+    @Override
+    public void whenReduce(Status currentStatus, Production production) {
+        // 产生式体的第 i 个符号位于 base + i
+        final var base = top - production.body().size() + 1;
+        IRValue addr = null;
+        SourceCodeType type = null;
+
+        switch (production.index()) {
+            // S -> D id;
+            case 4 -> {
+                final var id = tokens[base + 1].getText();
+                if (!symbolTable.has(id)) {
+                    throw new RuntimeException(String.format(ErrorDefination.NO_SYMBOL, id));
+                }
+                symbolTable.get(id).setType(types[base]);
+            }
+            // D -> int;
+            case 5 -> type = SourceCodeType.Int;
+            // S -> id = E;
+            case 6 -> {
+                final var id = tokens[base].getText();
+                if (!symbolTable.has(id)) {
+                    throw new RuntimeException(ErrorDefination.NO_SYMBOL.formatted(id));
+                }
+                code.add(Instruction.createMov(variables.named(id), addrs[base + 2]));
+            }
+            // S -> return E;
+            case 7 -> code.add(Instruction.createRet(addrs[base + 1]));
+            // E -> E + A;
+            case 8 -> {
+                addr = temps.newTemp();
+                code.add(Instruction.createAdd((IRVariable) addr, addrs[base + 2], addrs[base]));
+            }
+            // E -> E - A;
+            case 9 -> {
+                addr = temps.newTemp();
+                code.add(Instruction.createSub((IRVariable) addr, addrs[base], addrs[base + 2]));
+            }
+            // A -> A * B;
+            case 11 -> {
+                final var result = temps.newTemp();
+                var rhs = addrs[base + 2];
+                if (rhs.isImmediate()) {
+                    // there is no muli, so create template variable to hold imm value
+                    final var temp = temps.newTemp();
+                    code.add(Instruction.createMov(temp, rhs));
+                    rhs = temp;
+                }
+                code.add(Instruction.createMul(result, addrs[base], rhs));
+                addr = result;
+            }
+            // E -> A; | A -> B;
+            case 10, 12 -> addr = addrs[base];
+            // B -> ( E );
+            case 13 -> addr = addrs[base + 1];
+            // B -> id;
+            case 14 -> {
+                final var id = tokens[base].getText();
+                if (!symbolTable.has(id)) {
+                    throw new RuntimeException(ErrorDefination.NO_SYMBOL.formatted(id));
+                }
+                addr = variables.named(symbolTable.get(id).getText());
+            }
+            // B -> IntConst;
+            case 15 -> addr = IRImmediate.of(Integer.parseInt(tokens[base].getText()));
+            default -> {
+            }
+        }
+
+        top = base - 1;
+        push(null, addr, type);
+    }
+
+    @Override
+    public void whenAccept(Status currentStatus) {
+        Arrays.fill(tokens, 0, top + 1, null);
+        Arrays.fill(addrs, 0, top + 1, null);
+        Arrays.fill(types, 0, top + 1, null);
+        top = -1;
+        if (code instanceof InstructionBuffer buffer) {
+            buffer.trimToSize();
+        }
+    }
+
+    @Override
+    public void setSymbolTable(SymbolTable table) {
+        symbolTable = table;
+    }
+
+    public List<Instruction> getIR() {
+        return code;
+    }
+
+    public void dumpIR(String path) {
+        FileUtils.writeLines(path, getIR().stream().map(Instruction::toString).toList());
+    }
+
+    private void push(Token token, IRValue addr, SourceCodeType type) {
+        if (++top == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            addrs = Arrays.copyOf(addrs, addrs.length * 2);
+            types = Arrays.copyOf(types, types.length * 2);
+        }
+        tokens[top] = token;
+        addrs[top] = addr;
+        types[top] = type;
+    }
+}
@@ -1,17 +1,24 @@
 package cn.edu.hitsz.compiler.parser;
 
+import cn.edu.hitsz.compiler.Configs;
+import cn.edu.hitsz.compiler.jfr.ParseStateEvent;
+import cn.edu.hitsz.compiler.jfr.StageEvent;
 import cn.edu.hitsz.compiler.lexer.Token;
-import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
 import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.ParseTable;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
-import cn.edu.hitsz.compiler.parser.table.Term;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 // 实验二: 实现 LR 语法分析驱动程序
 
@@ -28,13 +35,45 @@ import java.util.Stack;
 public class SyntaxAnalyzer {
     private final SymbolTable symbolTable;
     private final List<ActionObserver> observers = new ArrayList<>();
+    private final List<ActionObserver> asyncObservers = new ArrayList<>();
+
+    /**
+     * 驱动程序产生的事件先写入该缓冲区, 满了或分析结束时再整批交给观察者
+     */
+    private final ParseEventBuffer events = new ParseEventBuffer(Configs.PARSER_EVENT_BATCH_SIZE);
+    private ExecutorService asyncExecutor = null;
+    private Future<?> lastAsyncBatch = null;
+    /**
+     * 后台观察者处理某一批事件时抛出的第一个异常. 出错之后不再向后台提交新的批次, 分析结束时重新抛出
+     */
+    private volatile Throwable asyncFailure = null;
 
     /**
      * 定义一个迭代器来存储词法单元，迭代器命名贴近函数调用
-     * 定义一个LRTable类的对象
+     * 定义一个编译后的 LR 分析表, 驱动程序直接按序号查表
      */
     private Iterator<Token> tokens = null;
-    private LRTable lrTable = null;
+    private ParseTable lrTable = null;
+
+    private static final int INITIAL_STACK_SIZE = 64;
+
+    /**
+     * 分析过程中读入的词法单元数与执行的移入, 规约次数
+     */
+    private int tokenCount = 0;
+    private int shiftCount = 0;
+    private int reduceCount = 0;
+
+    /**
+     * 上次分析是否执行了 accept 动作, 遇到错误或词法单元耗尽时为 false
+     */
+    private boolean accepted = false;
+
+    /**
+     * 录制 {@link ParseStateEvent} 时每个状态上执行的移入与规约次数, 未录制时为 null
+     */
+    private int[] stateShifts = null;
+    private int[] stateReduces = null;
 
     public SyntaxAnalyzer(SymbolTable symbolTable) {
         this.symbolTable = symbolTable;
@@ -50,6 +89,19 @@ public class SyntaxAnalyzer {
         observer.setSymbolTable(symbolTable);
     }
 
+    /**
+     * 注册在后台线程上运行的观察者
+     * <br>
+     * 这类观察者按批次在一个独立的线程上依次收到事件, 适用于像 {@link ProductionCollector} 这样不读写其它部分状态的观察者.
+     * {@link #run()} 返回时它已经处理完所有事件.
+     *
+     * @param observer 观察者
+     */
+    public void registerAsyncObserver(ActionObserver observer) {
+        asyncObservers.add(observer);
+        observer.setSymbolTable(symbolTable);
+    }
+
     /**
      * 在执行 shift 动作时通知各个观察者
      *
@@ -102,70 +154,258 @@ public class SyntaxAnalyzer {
         // 你可以自行选择要如何使用该表格:
         // 是直接对 LRTable 调用 getAction/getGoto, 抑或是直接将 initStatus 存起来使用
         //throw new NotImplementedException();
+        this.lrTable = CompiledLRTable.compile(table);
+    }
+
+    /**
+     * 加载已编译的 LR 分析表
+     *
+     * @param table 编译后的分析表, 可以是稠密的 {@link CompiledLRTable} 或压缩的 CompressedLRTable
+     */
+    public void loadLRTable(ParseTable table) {
         this.lrTable = table;
     }
 
+    /**
+     * @return 上次分析读入的词法单元数
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @return 上次分析执行的移入次数
+     */
+    public int getShiftCount() {
+        return shiftCount;
+    }
+
+    /**
+     * @return 上次分析执行的规约次数
+     */
+    public int getReduceCount() {
+        return reduceCount;
+    }
+
+    /**
+     * @return 上次分析是否接受了输入; 为 false 时观察者只收到了出错之前的事件, 其结果不完整
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+
     public void run() {
+        tokenCount = 0;
+        shiftCount = 0;
+        reduceCount = 0;
+        accepted = false;
+        final var event = new StageEvent();
+        event.begin();
+        try {
+            parse();
+            flushEvents();
+        } catch (RuntimeException | Error e) {
+            // 异常可能来自 flushEvents 中的某个观察者, 此时缓冲区中的这批事件已经交给了它之前的观察者,
+            // 不能再重放一次; 丢弃尚未交出的事件, 只等待后台观察者结束, 它的异常附在原来的异常上
+            events.clear();
+            try {
+                awaitAsyncObservers();
+            } catch (RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        awaitAsyncObservers();
+        if (event.shouldCommit()) {
+            event.stage = StageEvent.PARSER;
+            event.items = tokenCount;
+            event.commit();
+        }
+        commitStateEvents();
+    }
+
+    /**
+     * 为每个执行过动作的状态提交一个 {@link ParseStateEvent}
+     */
+    private void commitStateEvents() {
+        if (stateShifts == null) {
+            return;
+        }
+        for (int state = 0; state < stateShifts.length; state++) {
+            if (stateShifts[state] == 0 && stateReduces[state] == 0) {
+                continue;
+            }
+            final var event = new ParseStateEvent();
+            if (event.shouldCommit()) {
+                event.state = state;
+                event.shifts = stateShifts[state];
+                event.reduces = stateReduces[state];
+                event.commit();
+            }
+        }
+        stateShifts = null;
+        stateReduces = null;
+    }
+
+    private void emitShift(int state, Token token) {
+        events.appendShift(state, token);
+        if (events.isFull()) {
+            flushEvents();
+        }
+    }
+
+    private void emitReduce(int state, int production) {
+        events.appendReduce(state, production);
+        if (events.isFull()) {
+            flushEvents();
+        }
+    }
+
+    private void emitAccept(int state) {
+        events.appendAccept(state);
+        flushEvents();
+    }
+
+    /**
+     * 将缓冲区中的事件整批交给各观察者: 同步观察者依次处理完整批事件, 后台观察者收到一份拷贝
+     */
+    private void flushEvents() {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        for (final var observer : observers) {
+            events.replay(observer, lrTable);
+        }
+
+        if (!asyncObservers.isEmpty() && asyncFailure == null) {
+            if (asyncExecutor == null) {
+                asyncExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                    final var thread = new Thread(runnable, "parse-observer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            final var batch = events.copy();
+            final var table = lrTable;
+            lastAsyncBatch = asyncExecutor.submit(() -> {
+                // 已提交但尚未执行的批次在前面的批次出错后直接跳过
+                if (asyncFailure != null) {
+                    return;
+                }
+                try {
+                    for (final var observer : asyncObservers) {
+                        batch.replay(observer, table);
+                    }
+                } catch (Throwable e) {
+                    asyncFailure = e;
+                }
+            });
+        }
+
+        events.clear();
+    }
+
+    private void awaitAsyncObservers() {
+        if (asyncExecutor == null) {
+            return;
+        }
+
+        try {
+            // 后台只有一个线程, 最后一批完成时之前的批次都已完成
+            if (lastAsyncBatch != null) {
+                lastAsyncBatch.get();
+            }
+            if (asyncFailure != null) {
+                throw new RuntimeException(asyncFailure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            asyncExecutor.shutdown();
+            asyncExecutor = null;
+            lastAsyncBatch = null;
+            asyncFailure = null;
+        }
+    }
+
+    private void parse() {
         // 实现驱动程序
         // 你需要根据上面的输入来实现 LR 语法分析的驱动程序
         // 请分别在遇到 Shift, Reduce, Accept 的时候调用上面的 callWhenInShift, callWhenInReduce, callWhenInAccept
         // 否则用于为实验二打分的产生式输出可能不会正常工作
         //throw new NotImplementedException();
 
-        /**
-         * 定义一个内部类：状态组，以此表征符号栈和状态栈
-         *
-         * @param status 当前状态
-         * @param term 文法符号
-         */
-        class StatusTermPair {
-            public final Status status;
-            public final Term term;
-
-            public StatusTermPair(Status status, Term term){
-                this.status = status;
-                this.term = term;
-            }
-        }
-
-        Stack<StatusTermPair> stack = new Stack<>();
-        //初始状态为eof
-        StatusTermPair initial = new StatusTermPair(lrTable.getInit(), TokenKind.eof());
-        stack.add(initial);
+        // 状态栈直接用 int 数组保存编译后分析表中的状态序号, top 指向栈顶
+        // 规约时只需将 top 减去产生式体的长度, 整个分析过程不再为栈元素分配对象
+        final var table = lrTable;
+        final var tracing = Configs.PARSER_TRACE;
+        // 只有在录制 ParseStateEvent 时才按状态计数, 否则驱动循环中只多一次判空
+        final var countStates = new ParseStateEvent().isEnabled();
+        stateShifts = countStates ? new int[table.stateCount()] : null;
+        stateReduces = countStates ? new int[table.stateCount()] : null;
+        final var shiftsByState = stateShifts;
+        final var reducesByState = stateReduces;
+        var stack = new int[INITIAL_STACK_SIZE];
+        var top = 0;
+        stack[top] = table.initState();
         while(tokens.hasNext()){
             var nextToken = tokens.next();
+            tokenCount++;
+            var terminal = table.terminalOf(nextToken);
             var index = false;
             while(!index){
                 //定义操作
-                var action = lrTable.getAction(stack.peek().status, nextToken);
-                switch (action.getKind()){
-                    case Error -> {
+                var action = table.action(stack[top], terminal);
+                switch (CompiledLRTable.kindOf(action)){
+                    case CompiledLRTable.ERROR -> {
                         System.out.println("ERROR PARSING!!!");
                         return;
                     }
-                    case Accept -> {
-                        callWhenInAccept(stack.peek().status);
-                        System.out.println("Successfully Accepted!");
+                    case CompiledLRTable.ACCEPT -> {
+                        accepted = true;
+                        emitAccept(stack[top]);
+                        if (tracing) {
+                            System.out.println("Successfully Accepted!");
+                        }
                         return;
                     }
-                    case Shift -> {
-                        System.out.printf("Shift to state: %s\n", action.getStatus());
-                        callWhenInShift(action.getStatus(), nextToken);
-                        StatusTermPair next = new StatusTermPair(action.getStatus(), nextToken.getKind());
-                        stack.add(next);
+                    case CompiledLRTable.SHIFT -> {
+                        var target = CompiledLRTable.payloadOf(action);
+                        if (shiftsByState != null) {
+                            shiftsByState[stack[top]]++;
+                        }
+                        if (tracing) {
+                            System.out.printf("Shift to state: %s\n", table.status(target));
+                        }
+                        emitShift(target, nextToken);
+                        shiftCount++;
+                        if (++top == stack.length) {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[top] = target;
 
                         index = true;
                     }
-                    case Reduce -> {
-                        var production = action.getProduction();
-                        System.out.printf("Reduce: %s\n", production);
-                        for(int i = 0; i < production.body().size(); i++){
-                            stack.pop();
+                    case CompiledLRTable.REDUCE -> {
+                        var productionIndex = CompiledLRTable.payloadOf(action);
+                        if (reducesByState != null) {
+                            reducesByState[stack[top]]++;
                         }
-                        var newStatus = lrTable.getGoto(stack.peek().status, production.head());
-                        callWhenInReduce(stack.peek().status, production);
-                        stack.add(new StatusTermPair(newStatus, production.head()));
-
+                        if (tracing) {
+                            System.out.printf("Reduce: %s\n", table.production(productionIndex));
+                        }
+                        top -= table.bodySizeOf(productionIndex);
+                        var newState = table.gotoState(stack[top], table.headOf(productionIndex));
+                        emitReduce(stack[top], productionIndex);
+                        reduceCount++;
+                        if (++top == stack.length) {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[top] = newState;
                     }
                     default -> {
                         System.out.println("ERROR PARSING!!");
@@ -0,0 +1,155 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link ParseTable} 中与 ACTION/GOTO 表的存储方式无关的部分: 状态, 终结符, 非终结符与产生式的序号映射
+ * <br>
+ * 这些数据在同一张表的不同表示 (稠密数组, 压缩表) 之间共享, 压缩时不需要复制
+ *
+ * @author hogan
+ */
+abstract class AbstractParseTable implements ParseTable {
+    protected AbstractParseTable(Status[] statuses, TokenKind[] terminals, NonTerminal[] nonTerminals,
+                                 Map<Integer, Production> productionsByIndex) {
+        this.statuses = statuses;
+        this.terminals = terminals;
+        this.nonTerminals = nonTerminals;
+
+        final var maxCode = Arrays.stream(terminals).mapToInt(TokenKind::getCode).max().orElse(-1);
+        this.terminalByCode = new int[maxCode + 2];
+        Arrays.fill(terminalByCode, -1);
+        for (int idx = 0; idx < terminals.length; idx++) {
+            terminalByCode[terminals[idx].getCode() + 1] = idx;
+        }
+
+        this.nonTerminalOf = new HashMap<>();
+        for (int idx = 0; idx < nonTerminals.length; idx++) {
+            nonTerminalOf.put(nonTerminals[idx], idx);
+        }
+
+        final var maxIndex = productionsByIndex.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+        this.productions = new Production[maxIndex + 1];
+        this.productionHead = new int[maxIndex + 1];
+        this.productionLength = new int[maxIndex + 1];
+        Arrays.fill(productionHead, -1);
+        for (final var production : productionsByIndex.values()) {
+            final var index = production.index();
+            final var head = nonTerminalOf.get(production.head());
+            if (head == null) {
+                throw new RuntimeException("Head of production %s is not in the GOTO table".formatted(production));
+            }
+            productions[index] = production;
+            productionHead[index] = head;
+            productionLength[index] = production.body().size();
+        }
+    }
+
+    /**
+     * 与另一张表共享所有序号映射
+     *
+     * @param other 同一张分析表的另一种表示
+     */
+    protected AbstractParseTable(AbstractParseTable other) {
+        this(other, other.statuses);
+    }
+
+    /**
+     * 与另一张表共享除状态以外的序号映射
+     *
+     * @param other    同一张分析表的另一种表示
+     * @param statuses 按序号排列的状态, 可以在构造之后再填入
+     */
+    protected AbstractParseTable(AbstractParseTable other, Status[] statuses) {
+        this.statuses = statuses;
+        this.terminals = other.terminals;
+        this.nonTerminals = other.nonTerminals;
+        this.terminalByCode = other.terminalByCode;
+        this.nonTerminalOf = other.nonTerminalOf;
+        this.productions = other.productions;
+        this.productionHead = other.productionHead;
+        this.productionLength = other.productionLength;
+    }
+
+    @Override
+    public int initState() {
+        return 0;
+    }
+
+    @Override
+    public int terminalOf(TokenKind kind) {
+        final var slot = kind.getCode() + 1;
+        return slot >= 0 && slot < terminalByCode.length ? terminalByCode[slot] : -1;
+    }
+
+    @Override
+    public int nonTerminalOf(NonTerminal nonTerminal) {
+        return nonTerminalOf.getOrDefault(nonTerminal, -1);
+    }
+
+    @Override
+    public int headOf(int production) {
+        return productionHead[production];
+    }
+
+    @Override
+    public int bodySizeOf(int production) {
+        return productionLength[production];
+    }
+
+    @Override
+    public Production production(int production) {
+        return productions[production];
+    }
+
+    @Override
+    public Status status(int state) {
+        return statuses[state];
+    }
+
+    @Override
+    public int stateCount() {
+        return statuses.length;
+    }
+
+    @Override
+    public int terminalCount() {
+        return terminals.length;
+    }
+
+    @Override
+    public int nonTerminalCount() {
+        return nonTerminals.length;
+    }
+
+    /**
+     * @return 产生式 index 的上界 (不含)
+     */
+    int productionCount() {
+        return productions.length;
+    }
+
+    @Override
+    public TokenKind terminal(int terminal) {
+        return terminals[terminal];
+    }
+
+    @Override
+    public NonTerminal nonTerminal(int nonTerminal) {
+        return nonTerminals[nonTerminal];
+    }
+
+    private final Status[] statuses;
+    private final TokenKind[] terminals;
+    private final NonTerminal[] nonTerminals;
+    private final int[] terminalByCode;
+    private final Map<NonTerminal, Integer> nonTerminalOf;
+
+    private final Production[] productions;
+    private final int[] productionHead;
+    private final int[] productionLength;
+}
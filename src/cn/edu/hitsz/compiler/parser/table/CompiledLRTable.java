@@ -0,0 +1,141 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 编译后的 LR 分析表
+ * <br>
+ * {@link LRTable} 中的每个 {@link Status} 都用两个 HashMap 保存 action 与 goto, 每次查表都要对文法符号的名字求哈希.
+ * 该类为每个状态, 终结符与非终结符分配从 0 开始的稠密序号, 将 action 与 goto 表展开为一维 int 数组,
+ * 驱动程序只需做数组下标运算即可完成查表.
+ * <br>
+ * action 表中的每个动作被编码为一个 int: 低 2 位为动作种类 ({@link #ERROR}, {@link #SHIFT}, {@link #REDUCE}, {@link #ACCEPT}),
+ * 其余位为载荷: 移入动作的载荷为目标状态序号, 规约动作的载荷为产生式的 index. goto 表中用 -1 表示错误.
+ * <br>
+ * 通过 {@link #compile(LRTable)} 可以将 {@link TableLoader} 或 {@link TableGenerator} 构造出的 LRTable 编译为该结构.
+ *
+ * @author hogan
+ */
+public final class CompiledLRTable extends AbstractParseTable {
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    /**
+     * @param action 编码后的动作
+     * @return 动作种类
+     */
+    public static int kindOf(int action) {
+        return action & KIND_MASK;
+    }
+
+    /**
+     * @param action 编码后的动作
+     * @return 动作的载荷
+     */
+    public static int payloadOf(int action) {
+        return action >>> KIND_BITS;
+    }
+
+    static int encode(int kind, int payload) {
+        return (payload << KIND_BITS) | kind;
+    }
+
+    /**
+     * 将 LRTable 编译为稠密数组表示
+     *
+     * @param table LR 分析表
+     * @return 编译后的分析表
+     */
+    public static CompiledLRTable compile(LRTable table) {
+        final var statusList = table.getStatusInIndexOrder();
+        final var terminals = table.getTerminals().toArray(TokenKind[]::new);
+        final var nonTerminals = table.getNonTerminals().toArray(NonTerminal[]::new);
+
+        final var stateOf = new HashMap<Status, Integer>();
+        for (int idx = 0; idx < statusList.size(); idx++) {
+            stateOf.put(statusList.get(idx), idx);
+        }
+
+        final var stateCount = statusList.size();
+        final var actions = new int[stateCount * terminals.length];
+        final var gotos = new int[stateCount * nonTerminals.length];
+        final var productions = new HashMap<Integer, Production>();
+
+        for (int state = 0; state < stateCount; state++) {
+            final var status = statusList.get(state);
+            for (int terminal = 0; terminal < terminals.length; terminal++) {
+                final var action = status.getAction(terminals[terminal]);
+                actions[state * terminals.length + terminal] = switch (action.getKind()) {
+                    case Shift -> encode(SHIFT, stateOf.get(action.getStatus()));
+                    case Reduce -> {
+                        final var production = action.getProduction();
+                        productions.put(production.index(), production);
+                        yield encode(REDUCE, production.index());
+                    }
+                    case Accept -> encode(ACCEPT, 0);
+                    case Error -> encode(ERROR, 0);
+                };
+            }
+            for (int nonTerminal = 0; nonTerminal < nonTerminals.length; nonTerminal++) {
+                final var to = status.getGoto(nonTerminals[nonTerminal]);
+                gotos[state * nonTerminals.length + nonTerminal] = to.isError() ? -1 : stateOf.get(to);
+            }
+        }
+
+        return new CompiledLRTable(
+            statusList.toArray(Status[]::new), terminals, nonTerminals, actions, gotos, productions);
+    }
+
+    /**
+     * 由已经展开好的数组直接构造分析表, 供 {@link LRTableCache} 使用
+     */
+    static CompiledLRTable of(Status[] statuses, TokenKind[] terminals, NonTerminal[] nonTerminals,
+                              int[] actions, int[] gotos, Map<Integer, Production> productions) {
+        if (actions.length != statuses.length * terminals.length
+            || gotos.length != statuses.length * nonTerminals.length) {
+            throw new RuntimeException("Size of ACTION/GOTO table does not match its header");
+        }
+        return new CompiledLRTable(statuses, terminals, nonTerminals, actions, gotos, productions);
+    }
+
+    //==================== 查表 ==============================//
+
+    @Override
+    public int action(int state, int terminal) {
+        if (terminal < 0) {
+            return ERROR;
+        }
+        return actions[state * terminalCount + terminal];
+    }
+
+    @Override
+    public int gotoState(int state, int nonTerminal) {
+        return gotos[state * nonTerminalCount + nonTerminal];
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private CompiledLRTable(Status[] statuses, TokenKind[] terminals, NonTerminal[] nonTerminals,
+                            int[] actions, int[] gotos,
+                            Map<Integer, Production> productionsByIndex) {
+        super(statuses, terminals, nonTerminals, productionsByIndex);
+        this.terminalCount = terminals.length;
+        this.nonTerminalCount = nonTerminals.length;
+        this.actions = actions;
+        this.gotos = gotos;
+    }
+
+    private final int terminalCount;
+    private final int nonTerminalCount;
+
+    private final int[] actions;
+    private final int[] gotos;
+}
@@ -0,0 +1,363 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * 压缩后的 LR 分析表
+ * <br>
+ * {@link CompiledLRTable} 的 ACTION/GOTO 表是 状态数 x 符号数 的稠密数组, 其中绝大部分是错误动作, 或者同一个规约动作在一行中重复出现.
+ * 该类采用 yacc/bison 中常用的三种手段压缩分析表:
+ * <ul>
+ *     <li>默认规约: 每个状态取出现次数最多的规约动作作为默认动作, 该行中与之相同的动作以及所有错误动作都不再存储.
+ *     这会使某些错误在多做几次规约之后才被发现, 但不会让非法输入被接受, 也不改变合法输入的分析过程;</li>
+ *     <li>行位移 (comb vector): 各行剩下的显式动作按 base[state] + terminal 交错地存放在同一个一维数组中,
+ *     用 check 数组记录每个格子属于哪一行, 不属于当前行即取该行的默认动作;</li>
+ *     <li>共享 GOTO 表: 每个非终结符取出现次数最多的目标状态作为默认转移, 其余转移按非终结符一列一列地以同样的方式交错存放.
+ *     LR 驱动程序只会在合法的格子上查 GOTO 表, 所以错误的 GOTO 格子也可以当作默认转移.</li>
+ * </ul>
+ * 此外, 压缩后完全相同的 ACTION 行只存一份, 各状态通过 rowOf 找到自己的行; 所有数组都以 16 位的 char 存储,
+ * 因此要求状态数与产生式数都小于 {@link #MAX_INDEX}
+ * (行的起始位置可能超出 16 位, 仍以 int 存储).
+ * <br>
+ * 查表只需要常数次数组访问, 对于数千个状态的文法, 整张表也只有几十到几百 KB.
+ * <br>
+ * 原表中的 {@link Status} 各自带有 action 与 goto 两个 HashMap, 它们远大于压缩后的数组, 所以压缩表不引用原表的状态,
+ * 而是为每个状态构造一个新的 Status, 其 action 与 goto 是基于压缩数组的只读视图. 观察者通过 {@link Status#getAction}
+ * 与 {@link Status#getGoto} 查到的结果与 {@link #action(int, int)} 和 {@link #gotoState(int, int)} 一致,
+ * 也就是说原表中的部分错误动作会查到默认规约.
+ *
+ * @author hogan
+ * @see CompiledLRTable
+ */
+public final class CompressedLRTable extends AbstractParseTable {
+    /**
+     * 编码后的动作需要放进 16 位, 其中低 2 位为动作种类, 所以状态与产生式的序号都不能超过 14 位
+     */
+    public static final int MAX_INDEX = 1 << 14;
+
+    private static final char EMPTY = Character.MAX_VALUE;
+
+    /**
+     * 压缩一张分析表
+     *
+     * @param table 稠密数组形式的分析表
+     * @return 压缩后的分析表, 与原表共享状态, 符号与产生式
+     */
+    public static CompressedLRTable compress(CompiledLRTable table) {
+        final var stateCount = table.stateCount();
+        final var terminalCount = table.terminalCount();
+        final var nonTerminalCount = table.nonTerminalCount();
+        if (stateCount >= MAX_INDEX || table.productionCount() >= MAX_INDEX) {
+            throw new RuntimeException("LR table is too large to compress: %d states".formatted(stateCount));
+        }
+
+        // ACTION 表: 按行 (状态) 压缩, 每行的最后一个元素为默认动作, 相同的行只保留一份
+        final var rowOf = new char[stateCount];
+        final var rowIndex = new HashMap<List<Integer>, Integer>();
+        final var actionRows = new ArrayList<int[]>();
+        final var defaultActions = new ArrayList<Integer>();
+        for (int state = 0; state < stateCount; state++) {
+            final var row = new int[terminalCount];
+            for (int terminal = 0; terminal < terminalCount; terminal++) {
+                row[terminal] = table.action(state, terminal);
+            }
+            final var fallback = mostFrequent(row, action -> CompiledLRTable.kindOf(action) == CompiledLRTable.REDUCE,
+                CompiledLRTable.ERROR);
+            // 显式存储的只有非错误, 且与默认动作不同的格子
+            final var cells = IntStream.range(0, terminalCount)
+                .filter(terminal -> row[terminal] != CompiledLRTable.ERROR && row[terminal] != fallback)
+                .flatMap(terminal -> IntStream.of(terminal, row[terminal]))
+                .toArray();
+
+            final var key = IntStream.concat(Arrays.stream(cells), IntStream.of(fallback)).boxed().toList();
+            rowOf[state] = (char) (int) rowIndex.computeIfAbsent(key, ignored -> {
+                actionRows.add(cells);
+                defaultActions.add(fallback);
+                return actionRows.size() - 1;
+            });
+        }
+
+        // GOTO 表: 按列 (非终结符) 压缩
+        final var defaultGoto = new int[nonTerminalCount];
+        final var gotoColumns = new int[nonTerminalCount][];
+        for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+            final var column = new int[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                column[state] = table.gotoState(state, nonTerminal);
+            }
+            defaultGoto[nonTerminal] = mostFrequent(column, to -> to >= 0, -1);
+            final var fallback = defaultGoto[nonTerminal];
+            gotoColumns[nonTerminal] = IntStream.range(0, stateCount)
+                .filter(state -> column[state] >= 0 && column[state] != fallback)
+                .flatMap(state -> IntStream.of(state, column[state]))
+                .toArray();
+        }
+
+        final var actions = Comb.pack(actionRows.toArray(int[][]::new), terminalCount);
+        final var gotos = Comb.pack(gotoColumns, stateCount);
+        final var defaultAction = toChars(defaultActions.stream().mapToInt(Integer::intValue).toArray());
+        return new CompressedLRTable(table, rowOf, defaultAction, actions, defaultGoto, gotos);
+    }
+
+    @Override
+    public int action(int state, int terminal) {
+        if (terminal < 0) {
+            return CompiledLRTable.ERROR;
+        }
+        final var row = rowOf[state];
+        final var slot = actionBase[row] + terminal;
+        return actionCheck[slot] == row ? actionValue[slot] : defaultAction[row];
+    }
+
+    @Override
+    public int gotoState(int state, int nonTerminal) {
+        final var slot = gotoBase[nonTerminal] + state;
+        return gotoCheck[slot] == nonTerminal ? gotoValue[slot] : defaultGoto[nonTerminal];
+    }
+
+    /**
+     * @return 压缩后各个表占用的字节数 (不含状态对象, 以及共享的符号与产生式)
+     */
+    public int tableBytes() {
+        return Character.BYTES * (rowOf.length + defaultAction.length + actionCheck.length + actionValue.length
+            + gotoCheck.length + gotoValue.length)
+            + Integer.BYTES * (actionBase.length + defaultGoto.length + gotoBase.length);
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    /**
+     * @param values    一行 (或一列) 的所有格子
+     * @param candidate 哪些值可以作为默认值
+     * @param none      没有可作为默认值的格子时使用的值
+     * @return 出现次数最多的候选值, 次数相同时取较小者以保证结果确定
+     */
+    private static int mostFrequent(int[] values, IntPredicate candidate, int none) {
+        final var counts = new HashMap<Integer, Integer>();
+        for (final var value : values) {
+            if (candidate.test(value)) {
+                counts.merge(value, 1, Integer::sum);
+            }
+        }
+        return counts.entrySet().stream()
+            .max(Map.Entry.<Integer, Integer>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())))
+            .map(Map.Entry::getKey)
+            .orElse(none);
+    }
+
+    /**
+     * @param values 均在 [-1, {@link #EMPTY}) 之间的值, -1 表示空
+     * @return 16 位的拷贝, -1 变为 {@link #EMPTY}
+     */
+    private static char[] toChars(int[] values) {
+        final var result = new char[values.length];
+        for (int idx = 0; idx < values.length; idx++) {
+            final var value = values[idx];
+            if (value < -1 || value >= EMPTY) {
+                throw new RuntimeException("Value out of 16-bit range in compressed LR table: " + value);
+            }
+            result[idx] = value < 0 ? EMPTY : (char) value;
+        }
+        return result;
+    }
+
+    /**
+     * 行位移压缩的结果
+     *
+     * @param base  各行在一维数组中的起始位置
+     * @param check 各个格子所属的行, 空格子为 -1
+     * @param value 各个格子的值
+     */
+    private record Comb(int[] base, int[] check, int[] value) {
+        /**
+         * 将若干稀疏行交错地放入同一个一维数组, 按行中元素个数从多到少依次为每行找到第一个不冲突的位置
+         *
+         * @param rows  各行的显式格子, 形如 {@code [列, 值, 列, 值, ...]}
+         * @param width 行的宽度
+         * @return 压缩结果; 数组末尾留有 width 个格子, 所以任何 base[row] + 列 都不会越界
+         */
+        static Comb pack(int[][] rows, int width) {
+            final var order = IntStream.range(0, rows.length).boxed()
+                .sorted(Comparator.comparingInt((Integer row) -> rows[row].length).reversed())
+                .mapToInt(Integer::intValue).toArray();
+
+            final var base = new int[rows.length];
+            var check = new int[Math.max(width * 2, 16)];
+            var value = new int[check.length];
+            Arrays.fill(check, -1);
+            var used = 0;
+            // 第一个空格子的位置, 在它之前的位置不可能放得下任何一行
+            var firstFree = 0;
+
+            for (final var row : order) {
+                final var cells = rows[row];
+                if (cells.length == 0) {
+                    continue;
+                }
+
+                var candidate = firstFree - cells[0];
+                while (!fits(check, cells, candidate)) {
+                    candidate++;
+                }
+
+                final var end = candidate + cells[cells.length - 2] + 1;
+                if (end + width > check.length) {
+                    final var oldLength = check.length;
+                    check = Arrays.copyOf(check, Math.max(oldLength * 2, end + width));
+                    value = Arrays.copyOf(value, check.length);
+                    Arrays.fill(check, oldLength, check.length, -1);
+                }
+                for (int idx = 0; idx < cells.length; idx += 2) {
+                    check[candidate + cells[idx]] = row;
+                    value[candidate + cells[idx]] = cells[idx + 1];
+                }
+                base[row] = candidate;
+                used = Math.max(used, end);
+                while (firstFree < check.length && check[firstFree] >= 0) {
+                    firstFree++;
+                }
+            }
+
+            final var length = used + width;
+            return new Comb(base, Arrays.copyOf(check, length), Arrays.copyOf(value, length));
+        }
+
+        private static boolean fits(int[] check, int[] cells, int base) {
+            if (base < 0) {
+                return false;
+            }
+            for (int idx = 0; idx < cells.length; idx += 2) {
+                final var slot = base + cells[idx];
+                if (slot < check.length && check[slot] >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 状态的 action 视图: 非错误的格子才是映射中的元素
+     */
+    private final class ActionView extends AbstractMap<TokenKind, Action> {
+        private final int state;
+
+        ActionView(int state) {
+            this.state = state;
+        }
+
+        @Override
+        public Action get(Object key) {
+            if (!(key instanceof TokenKind kind)) {
+                return null;
+            }
+            final var action = action(state, terminalOf(kind));
+            final var payload = CompiledLRTable.payloadOf(action);
+            return switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> Action.shift(status(payload));
+                case CompiledLRTable.REDUCE -> Action.reduce(production(payload));
+                case CompiledLRTable.ACCEPT -> Action.accept();
+                default -> null;
+            };
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<TokenKind, Action>> entrySet() {
+            return IntStream.range(0, terminalCount())
+                .mapToObj(terminal -> new SimpleImmutableEntry<>(terminal(terminal), get(terminal(terminal))))
+                .filter(entry -> entry.getValue() != null)
+                .collect(Collectors.toUnmodifiableSet());
+        }
+    }
+
+    /**
+     * 状态的 goto 视图: 有转移的非终结符才是映射中的元素
+     */
+    private final class GotoView extends AbstractMap<NonTerminal, Status> {
+        private final int state;
+
+        GotoView(int state) {
+            this.state = state;
+        }
+
+        @Override
+        public Status get(Object key) {
+            if (!(key instanceof NonTerminal nonTerminal)) {
+                return null;
+            }
+            final var index = nonTerminalOf(nonTerminal);
+            final var to = index < 0 ? -1 : gotoState(state, index);
+            return to < 0 ? null : status(to);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<NonTerminal, Status>> entrySet() {
+            return IntStream.range(0, nonTerminalCount())
+                .mapToObj(index -> new SimpleImmutableEntry<>(nonTerminal(index), get(nonTerminal(index))))
+                .filter(entry -> entry.getValue() != null)
+                .collect(Collectors.toUnmodifiableSet());
+        }
+    }
+
+    private CompressedLRTable(CompiledLRTable table, char[] rowOf, char[] defaultAction, Comb actions,
+                              int[] defaultGoto, Comb gotos) {
+        this(table, new Status[table.stateCount()], rowOf, defaultAction, actions, defaultGoto, gotos);
+    }
+
+    private CompressedLRTable(CompiledLRTable table, Status[] statuses, char[] rowOf, char[] defaultAction,
+                              Comb actions, int[] defaultGoto, Comb gotos) {
+        super(table, statuses);
+        this.rowOf = rowOf;
+        this.defaultAction = defaultAction;
+        this.actionBase = actions.base();
+        this.actionCheck = toChars(actions.check());
+        this.actionValue = toChars(actions.value());
+        this.defaultGoto = defaultGoto;
+        this.gotoBase = gotos.base();
+        this.gotoCheck = toChars(gotos.check());
+        this.gotoValue = toChars(gotos.value());
+        for (int state = 0; state < statuses.length; state++) {
+            statuses[state] = new Status(state, new ActionView(state), new GotoView(state));
+        }
+    }
+
+    /**
+     * 各状态使用的 ACTION 行
+     */
+    private final char[] rowOf;
+    private final char[] defaultAction;
+    private final int[] actionBase;
+    private final char[] actionCheck;
+    private final char[] actionValue;
+
+    /**
+     * 默认转移可能为 -1 (该非终结符没有任何转移)
+     */
+    private final int[] defaultGoto;
+    private final int[] gotoBase;
+    private final char[] gotoCheck;
+    private final char[] gotoValue;
+}
@@ -22,6 +22,8 @@ public class GrammarInfo {
     }
 
     private GrammarInfo() {
+        // 区分终结符与非终结符需要先读取码点文件
+        TokenKind.loadTokenKinds();
         final var lines = FileUtils.readLines(FilePathConfig.GRAMMAR_PATH);
         for (int idx = 0; idx < lines.size(); idx++) {
             final var line = lines.get(idx);
@@ -50,16 +52,35 @@ public class GrammarInfo {
         }
     }
 
-    // 为了防止有人看不懂, 就不用枚举定义单例了
-    // 顺手写个懒加载
-    private static GrammarInfo instance = null;
+    // 懒加载的单例: 由 JVM 保证 Holder 只被初始化一次, 多个线程同时首次访问时也只会读取一次语法文件
+    // 构造完成后不再修改, 所以之后的访问都是线程安全的
+    private static final class Holder {
+        private static final GrammarInfo INSTANCE = new GrammarInfo();
+    }
+
+    /**
+     * @return 读取自默认语法文件的语法
+     */
+    public static GrammarInfo get() {
+        return Holder.INSTANCE;
+    }
 
     private static GrammarInfo getInstance() {
-        if (instance == null) {
-            instance = new GrammarInfo();
-        }
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return 开始产生式, 即语法文件的第一行
+     */
+    public Production beginProduction() {
+        return productionsInOrder.get(0);
+    }
 
-        return instance;
+    /**
+     * @return 按语法文件中的顺序排列的产生式
+     */
+    public List<Production> productionsInOrder() {
+        return Collections.unmodifiableList(productionsInOrder);
     }
 
     public static Map<String, NonTerminal> getNonTerminals() {
@@ -89,10 +110,10 @@ public class GrammarInfo {
     }
 
     public static Production getBeginProduction() {
-        return getInstance().productionsInOrder.get(0);
+        return getInstance().beginProduction();
     }
 
     public static List<Production> getProductionsInOrder() {
-        return Collections.unmodifiableList(getInstance().productionsInOrder);
+        return getInstance().productionsInOrder();
     }
 }
@@ -0,0 +1,232 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32C;
+
+/**
+ * 编译后的 LR 分析表的二进制缓存
+ * <br>
+ * {@link TableLoader} 每次都要把 CSV 逐行切成字符串, 并通过产生式的文本在 {@link GrammarInfo} 中查找规约动作.
+ * 该类把 {@link CompiledLRTable} 的稠密数组原样写入一个二进制文件, 之后的运行只需一次读入即可还原出分析表.
+ * <br>
+ * 文件格式 (大端序):
+ * <pre>
+ * int    魔数 "LRTC"
+ * int    格式版本
+ * long   指纹: grammar.txt, coding_map.csv 与 CSV 分析表内容的 CRC32C (高 32 位) 与 Adler32 (低 32 位)
+ * int    状态数, 终结符数, 非终结符数
+ * utf    各终结符的标识符, 各非终结符的名字 (2 字节长度 + UTF-8 字节)
+ * int[]  ACTION 表, GOTO 表, 编码与 {@link CompiledLRTable} 相同
+ * </pre>
+ * 魔数, 版本或指纹任意一项不符, 或者文件不完整时, 缓存都视为失效, 会重新读取 CSV 并覆盖缓存文件.
+ *
+ * @author hogan
+ */
+public final class LRTableCache {
+    private static final int MAGIC = 0x4C525443;
+    private static final int VERSION = 1;
+
+    /**
+     * 读取分析表, 缓存有效时直接使用缓存, 否则读取 CSV 分析表并写入缓存
+     *
+     * @param tablePath CSV 格式的分析表路径
+     * @param cachePath 缓存文件路径
+     * @return 编译后的分析表
+     */
+    public static CompiledLRTable load(String tablePath, String cachePath) {
+        final var fingerprint = fingerprint(FilePathConfig.GRAMMAR_PATH, FilePathConfig.CODING_MAP_PATH, tablePath);
+
+        final var cached = read(cachePath, fingerprint);
+        if (cached != null) {
+            return cached;
+        }
+
+        final var table = CompiledLRTable.compile(new TableLoader().load(tablePath));
+        write(cachePath, table, fingerprint);
+        return table;
+    }
+
+    /**
+     * 读取缓存文件
+     *
+     * @param path        缓存文件路径
+     * @param fingerprint 期望的指纹
+     * @return 还原出的分析表, 文件不存在或已失效时为 null
+     */
+    public static CompiledLRTable read(String path, long fingerprint) {
+        final ByteBuffer buffer;
+        try (final var channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 读满整个文件
+            }
+            buffer.flip();
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != fingerprint) {
+                return null;
+            }
+            return decode(buffer);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 将分析表写入缓存文件
+     *
+     * @param path        缓存文件路径
+     * @param table       分析表
+     * @param fingerprint 分析表来源文件的指纹
+     */
+    public static void write(String path, CompiledLRTable table, long fingerprint) {
+        final var stateCount = table.stateCount();
+        final var terminalCount = table.terminalCount();
+        final var nonTerminalCount = table.nonTerminalCount();
+
+        final var names = new byte[terminalCount + nonTerminalCount][];
+        var size = 4 + 4 + 8 + 3 * 4 + 4 * stateCount * (terminalCount + nonTerminalCount);
+        for (int idx = 0; idx < names.length; idx++) {
+            final var name = idx < terminalCount
+                ? table.terminal(idx).getIdentifier()
+                : table.nonTerminal(idx - terminalCount).getTermName();
+            names[idx] = name.getBytes(StandardCharsets.UTF_8);
+            size += 2 + names[idx].length;
+        }
+
+        final var buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(fingerprint);
+        buffer.putInt(stateCount).putInt(terminalCount).putInt(nonTerminalCount);
+        for (final var name : names) {
+            buffer.putShort((short) name.length).put(name);
+        }
+        for (int state = 0; state < stateCount; state++) {
+            for (int terminal = 0; terminal < terminalCount; terminal++) {
+                buffer.putInt(table.action(state, terminal));
+            }
+        }
+        for (int state = 0; state < stateCount; state++) {
+            for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+                buffer.putInt(table.gotoState(state, nonTerminal));
+            }
+        }
+        buffer.flip();
+
+        try (final var channel = FileChannel.open(Path.of(path),
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    /**
+     * 计算若干文件内容的指纹, 任一文件改变时指纹随之改变
+     *
+     * @param paths 文件路径
+     * @return 指纹
+     */
+    public static long fingerprint(String... paths) {
+        // 不使用 MessageDigest: 初始化安全提供者本身就要花费数十毫秒, 比读取 CSV 还慢
+        final var crc = new CRC32C();
+        final var adler = new Adler32();
+        for (final var path : paths) {
+            try {
+                final var content = Files.readAllBytes(Path.of(path));
+                // 先写入长度, 避免相邻两个文件的内容拼接后产生歧义
+                final var length = ByteBuffer.allocate(4).putInt(content.length).array();
+                crc.update(length);
+                crc.update(content);
+                adler.update(length);
+                adler.update(content);
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on " + path, e);
+            }
+        }
+
+        return (crc.getValue() << 32) | adler.getValue();
+    }
+
+    private static CompiledLRTable decode(ByteBuffer buffer) {
+        final var stateCount = buffer.getInt();
+        final var terminalCount = buffer.getInt();
+        final var nonTerminalCount = buffer.getInt();
+
+        final var terminals = new TokenKind[terminalCount];
+        for (int idx = 0; idx < terminalCount; idx++) {
+            terminals[idx] = TokenKind.fromString(readName(buffer));
+        }
+        final var nonTerminals = new NonTerminal[nonTerminalCount];
+        for (int idx = 0; idx < nonTerminalCount; idx++) {
+            nonTerminals[idx] = new NonTerminal(readName(buffer));
+        }
+
+        final var actions = new int[stateCount * terminalCount];
+        final var gotos = new int[stateCount * nonTerminalCount];
+        buffer.asIntBuffer().get(actions).get(gotos);
+
+        // 还原 Status 对象的 action 与 goto, 使观察者拿到的状态与从 CSV 读取时一致
+        final var statuses = new Status[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            statuses[state] = Status.create(state);
+        }
+
+        final var productionsInOrder = GrammarInfo.getProductionsInOrder();
+        final Map<Integer, Production> productions = new HashMap<>();
+        for (int state = 0; state < stateCount; state++) {
+            final var status = statuses[state];
+            for (int terminal = 0; terminal < terminalCount; terminal++) {
+                final var action = actions[state * terminalCount + terminal];
+                final var payload = CompiledLRTable.payloadOf(action);
+                switch (CompiledLRTable.kindOf(action)) {
+                    case CompiledLRTable.SHIFT -> status.setAction(terminals[terminal], Action.shift(statuses[payload]));
+                    case CompiledLRTable.REDUCE -> {
+                        // 产生式的 index 即为其在 grammar.txt 中的行号
+                        final var production = productionsInOrder.get(payload - 1);
+                        productions.put(payload, production);
+                        status.setAction(terminals[terminal], Action.reduce(production));
+                    }
+                    case CompiledLRTable.ACCEPT -> status.setAction(terminals[terminal], Action.accept());
+                    default -> {
+                    }
+                }
+            }
+            for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+                final var to = gotos[state * nonTerminalCount + nonTerminal];
+                status.setGoto(nonTerminals[nonTerminal], to < 0 ? Status.error() : statuses[to]);
+            }
+        }
+
+        return CompiledLRTable.of(statuses, terminals, nonTerminals, actions, gotos, productions);
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        final var bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private LRTableCache() {
+    }
+}
@@ -0,0 +1,120 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+/**
+ * 以序号查表的 LR 分析表, LR 驱动程序只依赖该接口
+ * <br>
+ * 状态, 终结符与非终结符都用从 0 开始的稠密序号表示, 动作的编码见 {@link CompiledLRTable}.
+ * {@link #getAction(Status, Token)} 与 {@link #getGoto(Status, NonTerminal)} 提供与 {@link LRTable} 相同的对象形式的访问.
+ *
+ * @author hogan
+ * @see CompiledLRTable 稠密数组实现
+ * @see CompressedLRTable 压缩实现
+ */
+public interface ParseTable {
+    /**
+     * @return 起始状态的序号
+     */
+    int initState();
+
+    /**
+     * @param kind 词法单元类型
+     * @return 该类型对应的终结符序号, 不在表中时为 -1
+     */
+    int terminalOf(TokenKind kind);
+
+    /**
+     * @param token 词法单元
+     * @return 该词法单元类型对应的终结符序号, 不在表中时为 -1
+     */
+    default int terminalOf(Token token) {
+        return terminalOf(token.getKind());
+    }
+
+    /**
+     * @param nonTerminal 非终结符
+     * @return 该非终结符的序号, 不在表中时为 -1
+     */
+    int nonTerminalOf(NonTerminal nonTerminal);
+
+    /**
+     * @param state    状态序号
+     * @param terminal 终结符序号, 小于 0 时总是返回错误动作
+     * @return 编码后的动作
+     */
+    int action(int state, int terminal);
+
+    /**
+     * @param state       状态序号
+     * @param nonTerminal 非终结符序号
+     * @return 转移到的状态序号, 错误时为 -1
+     */
+    int gotoState(int state, int nonTerminal);
+
+    /**
+     * @param production 产生式的 index
+     * @return 该产生式头部的非终结符序号
+     */
+    int headOf(int production);
+
+    /**
+     * @param production 产生式的 index
+     * @return 该产生式体的长度
+     */
+    int bodySizeOf(int production);
+
+    /**
+     * @param production 产生式的 index
+     * @return 对应的产生式
+     */
+    Production production(int production);
+
+    /**
+     * @param state 状态序号
+     * @return 对应的状态对象, 用于通知观察者
+     */
+    Status status(int state);
+
+    int stateCount();
+
+    int terminalCount();
+
+    int nonTerminalCount();
+
+    TokenKind terminal(int terminal);
+
+    NonTerminal nonTerminal(int nonTerminal);
+
+    /**
+     * 根据当前状态与当前词法单元获取对应动作, 与 {@link LRTable#getAction(Status, Token)} 相同
+     *
+     * @param status 当前状态
+     * @param token  当前词法单元
+     * @return 应采取的动作
+     */
+    default Action getAction(Status status, Token token) {
+        final var action = action(status.index(), terminalOf(token));
+        final var payload = CompiledLRTable.payloadOf(action);
+        return switch (CompiledLRTable.kindOf(action)) {
+            case CompiledLRTable.SHIFT -> Action.shift(status(payload));
+            case CompiledLRTable.REDUCE -> Action.reduce(production(payload));
+            case CompiledLRTable.ACCEPT -> Action.accept();
+            default -> Action.error();
+        };
+    }
+
+    /**
+     * 根据当前状态与规约到非终结符获得应转移到的状态, 与 {@link LRTable#getGoto(Status, NonTerminal)} 相同
+     *
+     * @param status      当前状态
+     * @param nonTerminal 规约出的非终结符
+     * @return 应转移到的状态
+     */
+    default Status getGoto(Status status, NonTerminal nonTerminal) {
+        final var index = nonTerminalOf(nonTerminal);
+        final var to = index < 0 ? -1 : gotoState(status.index(), index);
+        return to < 0 ? Status.error() : status(to);
+    }
+}
@@ -4,16 +4,55 @@ import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ObjIntConsumer;
 
 /**
  * 根据语法文件构造 LR 分析表.
  * <br>
  * 此文件为非必需的框架文件, 用于提升整个编译器处理流程的统一性以及为学生提供 SLR(1) 分析表生成程序的参考. 正常情况下你不需要了解该文件.
+ * <br>
+ * 为了让较大的文法也能快速生成分析表, 构造过程全部在整数上进行:
+ * <ul>
+ *     <li>文法符号按 "先非终结符, 后终结符" 的顺序编号, 产生式体被展开为 int 数组, 并预先建立 产生式头 -> 产生式 的索引;</li>
+ *     <li>项目被编码为一个 int: 第 p 条产生式点在 dot 处的项目为 {@code itemBase[p] + dot};</li>
+ *     <li>FIRST 与 FOLLOW 集合是以终结符编号为下标的 {@link BitSet}, 通过不动点迭代求出;</li>
+ *     <li>项目集只以其核 (排好序的 int 数组) 作为键去重, 闭包只在新状态第一次出现时计算一次,
+ *     所有后继项目集的核在一趟扫描中按点后符号分桶得到.</li>
+ * </ul>
+ * 符号的遍历顺序与原先的实现相同, 因此生成的状态编号与分析表不变.
+ * <br>
+ * 除 SLR(1) 外还支持规范 LR(1) 与 LALR(1) 两种构造方式, 见 {@link Mode}. 结果同样填入 {@link LRTable} 与 {@link Status}.
  */
 public class TableGenerator {
+    /**
+     * 分析表的构造方式
+     * <ul>
+     *     <li>SLR: 在 LR(0) 项目集族上用 FOLLOW 集合决定规约;</li>
+     *     <li>LR1: 构造规范 LR(1) 项目集族, 核相同但向前看符号不同的项目集是不同的状态;</li>
+     *     <li>LALR: 在 LR(0) 项目集族上用 "自发生成 + 传播" 的方法求出各核心项目的向前看符号,
+     *     状态数与 SLR 相同, 不需要先构造 LR(1) 项目集族再合并.</li>
+     * </ul>
+     */
+    public enum Mode {SLR, LR1, LALR}
+
     public TableGenerator() {
+        this(Mode.SLR);
+    }
+
+    public TableGenerator(Mode mode) {
+        this(mode, null);
+    }
+
+    /**
+     * @param mode 分析表的构造方式
+     * @param pool 用于并行构造规范项目集族的线程池, 为 null 时顺序构造. 两种方式生成的状态编号与分析表完全相同
+     */
+    public TableGenerator(Mode mode, ForkJoinPool pool) {
+        this.mode = mode;
+        this.pool = pool;
         this.productions = GrammarInfo.getProductionsInOrder();
         this.terminals = new HashSet<>(TokenKind.allAllowedTokenKinds().values());
         this.nonTerminals = new HashSet<>(GrammarInfo.getNonTerminals().values());
@@ -21,28 +60,48 @@ public class TableGenerator {
         if (productions.get(0).body().size() != 1) {
             throw new RuntimeException("The first production in grammar file must like S -> S'");
         }
+
+        indexSymbols();
+        indexProductions();
     }
 
     /**
-     * 主体方法
+     * 主体方法: 构造分析表, 并把规范项目集族写入 data/out/items.txt
      */
     public void run() {
+        construct();
+        dumpItems();
+    }
+
+    /**
+     * 只构造分析表, 不写出任何文件, 之后可以调用 {@link #getTable()} 与 {@link #dumpItems()}
+     */
+    public void construct() {
         calcFirst();
-        calcFollow();
+        if (mode == Mode.SLR) {
+            calcFollow();
+        }
         constructDFA();
-        dumpItems();
+        if (mode == Mode.LALR) {
+            calcLALRLookaheads();
+        }
         genTable();
     }
 
     /**
-     * 将该分析表生成的 LR(0) 规范集族打印到某个文件之中, 用于调试
+     * 将该分析表生成的规范项目集族打印到某个文件之中, 用于调试
      */
     public void dumpItems() {
         final var lines = new ArrayList<String>();
         for (final var status : allStatusInIndexOrder) {
             lines.add("%d: ".formatted(status.index()));
-            for (final var item : including.get(status)) {
-                lines.add("    " + item);
+            final var closure = closures.get(status.index());
+            final var lookaheads = mode == Mode.SLR ? null : closureLookaheads.get(status.index());
+            for (int idx = 0; idx < closure.length; idx++) {
+                // 只有点在末尾的项目的向前看符号会影响分析表, 其余项目的向前看符号不输出, 否则文件会非常大
+                final var item = closure[idx];
+                final var showLookahead = lookaheads != null && itemAfterDot[item] < 0;
+                lines.add("    " + itemToString(item, showLookahead ? lookaheads[idx] : null));
             }
         }
 
@@ -56,343 +115,703 @@ public class TableGenerator {
         return new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
     }
 
+    private final Mode mode;
+    private final ForkJoinPool pool;
     private final List<Production> productions;
     private final Set<TokenKind> terminals;
     private final Set<NonTerminal> nonTerminals;
 
-    private final Map<Term, Set<TokenKind>> first = new HashMap<>();
-    private final Map<Term, Set<TokenKind>> follow = new HashMap<>();
+    //==================== 符号与产生式的编号 ==============================//
+
+    /**
+     * 所有文法符号, [0, nonTerminalCount) 为非终结符, 其后为终结符
+     */
+    private Term[] symbols;
+    private int nonTerminalCount;
+    private int terminalCount;
+    private final Map<Term, Integer> symbolOf = new HashMap<>();
 
-    private final Set<Term> visited = new HashSet<>();
+    private int[] productionHead;
+    private int[][] productionBody;
+    /**
+     * 以非终结符编号为下标, 以该非终结符为头的所有产生式序号
+     */
+    private int[][] productionsByHead;
 
     /**
-     * 计算所有符号的 first 集合 <br>
-     * 终结符的 first 就是它自身, 非终结符的 first 则递归计算
+     * 第 p 条产生式的第一个项目 (点在最左边) 的编号
      */
-    private void calcFirst() {
-        for (final var terminal : terminals) {
-            first.put(terminal, Set.of(terminal));
+    private int[] itemBase;
+    private int[] itemProduction;
+    private int[] itemDot;
+    /**
+     * 项目点后的符号, 点在末尾时为 -1
+     */
+    private int[] itemAfterDot;
+
+    /**
+     * 为文法符号编号; 顺序与原实现中构造规范项目集族时遍历符号的顺序相同, 以保证状态编号不变
+     */
+    private void indexSymbols() {
+        final var terms = new LinkedHashSet<Term>();
+        terms.addAll(nonTerminals);
+        terms.addAll(terminals);
+
+        symbols = terms.toArray(Term[]::new);
+        nonTerminalCount = nonTerminals.size();
+        terminalCount = terminals.size();
+        for (int idx = 0; idx < symbols.length; idx++) {
+            symbolOf.put(symbols[idx], idx);
         }
+    }
 
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFirst(nonTerminal);
+    private void indexProductions() {
+        final var count = productions.size();
+        productionHead = new int[count];
+        productionBody = new int[count][];
+        itemBase = new int[count];
+
+        final var byHeadCount = new int[nonTerminalCount];
+        var itemCount = 0;
+        for (int p = 0; p < count; p++) {
+            final var production = productions.get(p);
+            productionHead[p] = symbolOf.get(production.head());
+            productionBody[p] = production.body().stream().mapToInt(symbolOf::get).toArray();
+            byHeadCount[productionHead[p]]++;
+
+            itemBase[p] = itemCount;
+            itemCount += productionBody[p].length + 1;
         }
 
-    }
+        productionsByHead = new int[nonTerminalCount][];
+        for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+            productionsByHead[nonTerminal] = new int[byHeadCount[nonTerminal]];
+            byHeadCount[nonTerminal] = 0;
+        }
+        for (int p = 0; p < count; p++) {
+            final var head = productionHead[p];
+            productionsByHead[head][byHeadCount[head]++] = p;
+        }
 
-    /**
-     * 递归计算特定非终结符的 first
-     *
-     * @param nonTerminal 非终结符
-     * @return 其 first 集合
-     */
-    private Set<TokenKind> calcFirst(Term nonTerminal) {
-        // 如果已经被计算, 则直接返回缓存的结果
-        if (first.containsKey(nonTerminal)) {
-            return first.get(nonTerminal);
-        }
-
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            if (nonTerminal == production.head()) {
-                // 在文法中寻找以该非终结符为头的产生式
-                final var firstSymbol = production.body().get(0);
-                // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
-                if (!visited.contains(firstSymbol)) {
-                    // 随后递归查找该产生式体的第一个文法符号的 first 集合
-                    // 它的 first 集合也是该非终结符的 first 集合
-                    visited.add(firstSymbol);
-                    result.addAll(calcFirst(firstSymbol));
-                }
+        itemProduction = new int[itemCount];
+        itemDot = new int[itemCount];
+        itemAfterDot = new int[itemCount];
+        for (int p = 0; p < count; p++) {
+            final var body = productionBody[p];
+            for (int dot = 0; dot <= body.length; dot++) {
+                final var item = itemBase[p] + dot;
+                itemProduction[item] = p;
+                itemDot[item] = dot;
+                itemAfterDot[item] = dot < body.length ? body[dot] : -1;
             }
         }
+    }
 
-        first.put(nonTerminal, result);
-        return result;
+    private boolean isTerminal(int symbol) {
+        return symbol >= nonTerminalCount;
+    }
+
+    /**
+     * @param symbol 终结符的符号编号
+     * @return 该终结符在 FIRST/FOLLOW 位集中的下标
+     */
+    private int terminalBit(int symbol) {
+        return symbol - nonTerminalCount;
+    }
+
+    private TokenKind terminalOfBit(int bit) {
+        return (TokenKind) symbols[nonTerminalCount + bit];
     }
 
+    //==================== FIRST 与 FOLLOW ==============================//
 
     /**
-     * 计算所有非终结符的 follow 集合
+     * 以符号编号为下标的 first 集合
      */
-    private void calcFollow() {
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFollow(nonTerminal);
+    private BitSet[] first;
+    /**
+     * 以非终结符编号为下标的 follow 集合
+     */
+    private BitSet[] follow;
+
+    /**
+     * 计算所有符号的 first 集合 <br>
+     * 终结符的 first 就是它自身; 文法中没有空产生式, 所以非终结符的 first 就是其各产生式体第一个符号的 first 之并,
+     * 反复合并直到不再变化即可, 左递归不需要特殊处理
+     */
+    private void calcFirst() {
+        first = new BitSet[symbols.length];
+        for (int symbol = 0; symbol < symbols.length; symbol++) {
+            first[symbol] = new BitSet(terminalCount);
+            if (isTerminal(symbol)) {
+                first[symbol].set(terminalBit(symbol));
+            }
         }
 
-        // 对于找完所有产生式了都还没没有 follow 的非终结符
-        // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
-        nonTerminals.stream()
-            .map(follow::get).filter(Set::isEmpty)
-            .forEach(set -> set.add(TokenKind.eof()));
+        var changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productionBody.length; p++) {
+                changed |= union(first[productionHead[p]], first[productionBody[p][0]]);
+            }
+        }
     }
 
     /**
-     * 递归计算给定非终结符的 follow 集合
-     *
-     * @param nonTerminal 给定的非终止符
-     * @return 其 follow 集合
+     * 计算所有非终结符的 follow 集合 <br>
+     * 对每个产生式体中非终结符的每次出现, 将紧跟其后符号的 first 加入其 follow; 出现在末尾时则加入产生式头的 follow.
+     * 同样迭代到不动点
      */
-    private Set<TokenKind> calcFollow(NonTerminal nonTerminal) {
-        // 与 first 类似, 先查找缓存
-        if (follow.containsKey(nonTerminal)) {
-            return follow.get(nonTerminal);
+    private void calcFollow() {
+        follow = new BitSet[nonTerminalCount];
+        for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+            follow[nonTerminal] = new BitSet(terminalCount);
         }
 
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            final var body = production.body();
-
-            // 对该非终结符在每条产生式体中的可能出现, 我们都要将紧跟在该出现后面的项的 first 加入其 follow 集合
-            // 我们直接枚举每条产生式体的每个项
-            for (int i = 0; i < body.size() - 1; i++) {
-                // 如果发现目前的 curr 的话, 后面跟着的符号的 first 就是它的 follow
-                final var symbol = body.get(i);
-                final var next = body.get(i + 1);
+        // 拓广文法的开始符号后面只能是 EOF
+        final var eofBit = terminalBit(symbolOf.get(TokenKind.eof()));
+        follow[productionHead[0]].set(eofBit);
+
+        var changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productionBody.length; p++) {
+                final var body = productionBody[p];
+                for (int i = 0; i < body.length - 1; i++) {
+                    if (!isTerminal(body[i])) {
+                        changed |= union(follow[body[i]], first[body[i + 1]]);
+                    }
+                }
 
-                if (symbol.equals(nonTerminal)) {
-                    result.addAll(first.get(next));
+                final var last = body[body.length - 1];
+                if (!isTerminal(last)) {
+                    changed |= union(follow[last], follow[productionHead[p]]);
                 }
             }
+        }
 
-            // 如果该非终结符出现在产生式的末尾, 那么该产生式的头的 follow 集合也要加入其 follow 集合中
-            final var lastInBody = body.get(body.size() - 1);
-            if (lastInBody.equals(nonTerminal)) {
-                final var head = production.head();
-                if (visited.contains(head)) {
-                    // 如果该产生式头已经在栈中了, 那么意味着这个非终结符有可能一直展开自己
-                    // 这时候 EOF 也可能是它的 Follow
-                    result.add(TokenKind.eof());
-                } else {
-                    // 否则直接递归查找
-                    visited.add(head);
-                    result.addAll(calcFollow(head));
-                }
+        // 对于找完所有产生式了都还没没有 follow 的非终结符
+        // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
+        for (final var set : follow) {
+            if (set.isEmpty()) {
+                set.set(eofBit);
             }
         }
+    }
 
-        follow.put(nonTerminal, result);
-        return result;
+    /**
+     * @return target 是否因此改变
+     */
+    private static boolean union(BitSet target, BitSet source) {
+        final var before = target.cardinality();
+        target.or(source);
+        return target.cardinality() != before;
     }
 
+    //==================== 规范项目集族 ==============================//
+
     /**
-     * 表示一个项目
-     * <br>
-     * 对于 A -> B . C, 其 production 为 A -> B C, dot 为 1 (其下一个项 C 的索引) <br>
-     * 对于 A -> B C ., 其 production 为 A -> B C, dot 为 2 (其产生式体的项数量) <br>
-     *
-     * @param production 产生式
-     * @param dot        目前解析到的位置
+     * 项目集的核, 即排好序的核心项目编号, 以及 (仅 LR(1) 时) 各核心项目的向前看符号集合.
+     * 核唯一确定了整个项目集
      */
-    private record Item(Production production, int dot) {
-        /**
-         * @return 点的位置是否在产生式的末尾
-         */
-        public boolean isDotAtEnd() {
-            return production.body().size() == dot;
+    private record Kernel(int[] items, BitSet[] lookaheads) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Kernel kernel
+                && Arrays.equals(items, kernel.items)
+                && Arrays.equals(lookaheads, kernel.lookaheads);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(items) + Arrays.hashCode(lookaheads);
         }
+    }
+
+    private final Map<Kernel, Integer> stateOfKernel = new HashMap<>();
+    /**
+     * 各状态的项目集 (闭包), 以状态编号为下标
+     */
+    private final List<int[]> closures = new ArrayList<>();
+    /**
+     * 各状态的核心项目数量, 核心项目总是排在闭包的最前面
+     */
+    private final List<Integer> kernelSizes = new ArrayList<>();
+    /**
+     * LR(1) 与 LALR 时, 各状态闭包中每个项目的向前看符号集合, 与 closures 一一对应
+     */
+    private final List<BitSet[]> closureLookaheads = new ArrayList<>();
+    /**
+     * 各状态在每个符号上的转移, 以状态编号为下标, 每行以符号编号为下标, 无转移时为 -1
+     */
+    private final List<int[]> transitions = new ArrayList<>();
+    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+
+    /**
+     * 一个项目集: 闭包中的所有项目 (核在前), 以及 LR(1) 时各项目的向前看符号
+     */
+    private record ItemSet(int[] items, BitSet[] lookaheads) {
+    }
+
+    /**
+     * 某个状态在符号 symbol 上的后继项目集的核
+     */
+    private record Successor(int symbol, Kernel kernel) {
+    }
 
+    /**
+     * 求闭包与后继时使用的临时数组, 并行构造时每个任务各自持有一份
+     */
+    private final class Scratch {
         /**
-         * @return 获得点后面的文法符号; 若点的位置在末尾则返回空
+         * 求闭包时用于去重的标记, 与 stamp 相等即表示已在本次闭包中
          */
-        public Optional<Term> getAfterDot() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(production.body().get(dot));
-            }
-        }
+        private final int[] itemMark = new int[itemProduction.length];
+        private final int[] headMark = new int[nonTerminalCount];
+        private int stamp = 0;
 
         /**
-         * @return 获得当前项目的后继项; 若点的位置在末尾则返回空
+         * 按点后符号分桶收集后继项目集的核
          */
-        public Optional<Item> getNextItem() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(new Item(production, dot + 1));
-            }
-        }
+        private final int[][] buckets = new int[symbols.length][];
+        private final int[] bucketSizes = new int[symbols.length];
+        private final int[] touched = new int[symbols.length];
+    }
 
-        @Override
-        public String toString() {
-            final var builder = new StringBuilder();
+    /**
+     * 以 BFS 的顺序构造 LR(0) (SLR 与 LALR) 或 LR(1) 规范项目集族, 并记录状态间的转移
+     * <br>
+     * 搜索按层进行: 先求出本层所有状态的后继核, 再求出其中新出现的核的闭包, 这两步在指定了 {@link ForkJoinPool} 时并行执行;
+     * 最后按 (状态编号, 符号编号) 的顺序依次为新状态编号. 这与逐个状态顺序 BFS 得到的编号完全相同,
+     * 所以并行与否不影响生成的分析表.
+     */
+    private void constructDFA() {
+        // 起始项目 S -> . S', LR(1) 时其向前看符号为 EOF
+        final Kernel initKernel;
+        if (mode == Mode.LR1) {
+            final var eof = newLookaheadSet();
+            eof.set(terminalBit(symbolOf.get(TokenKind.eof())));
+            initKernel = new Kernel(new int[]{itemBase[0]}, new BitSet[]{eof});
+        } else {
+            initKernel = new Kernel(new int[]{itemBase[0]}, null);
+        }
+        addState(initKernel, closeKernel(initKernel, new Scratch()));
+
+        var levelBegin = 0;
+        while (levelBegin < closures.size()) {
+            final var begin = levelBegin;
+            final var end = closures.size();
+
+            // 求出本层每个状态的所有后继核
+            final var successors = new Successor[end - begin][];
+            forEachParallel(end - begin, (scratch, idx) -> successors[idx] = successorsOf(begin + idx, scratch));
+
+            // 求出新出现的核的闭包, 同一个核只求一次. 这一步只读 stateOfKernel, 不会与编号冲突
+            final var allSuccessors = Arrays.stream(successors).flatMap(Arrays::stream).toArray(Successor[]::new);
+            final var newItemSets = new ConcurrentHashMap<Kernel, ItemSet>();
+            forEachParallel(allSuccessors.length, (scratch, idx) -> {
+                final var kernel = allSuccessors[idx].kernel();
+                if (!stateOfKernel.containsKey(kernel)) {
+                    newItemSets.computeIfAbsent(kernel, key -> closeKernel(key, scratch));
+                }
+            });
+
+            // 顺序编号, 新状态追加在末尾, 成为下一层
+            for (int idx = 0; idx < successors.length; idx++) {
+                final var row = transitions.get(begin + idx);
+                for (final var successor : successors[idx]) {
+                    final var kernel = successor.kernel();
+                    final var existing = stateOfKernel.get(kernel);
+                    row[successor.symbol()] = existing != null ? existing : addState(kernel, newItemSets.get(kernel));
+                }
+            }
 
-            builder.append(production.head());
-            builder.append(" -> ");
+            levelBegin = end;
+        }
+    }
 
-            final var body = production.body();
-            for (int i = 0; i < body.size(); i++) {
-                if (i == dot) {
-                    builder.append(" .");
+    /**
+     * 求出一个状态在各个符号上的后继项目集的核
+     *
+     * @param state   状态编号
+     * @param scratch 临时数组
+     * @return 各后继核, 按符号编号排序
+     */
+    private Successor[] successorsOf(int state, Scratch scratch) {
+        final var closure = closures.get(state);
+        final var lookaheads = mode == Mode.LR1 ? closureLookaheads.get(state) : null;
+        final var buckets = scratch.buckets;
+        final var bucketSizes = scratch.bucketSizes;
+        final var touched = scratch.touched;
+
+        var touchedCount = 0;
+        for (int idx = 0; idx < closure.length; idx++) {
+            final var symbol = itemAfterDot[closure[idx]];
+            if (symbol < 0) {
+                continue;
+            }
+            if (bucketSizes[symbol] == 0) {
+                touched[touchedCount++] = symbol;
+                if (buckets[symbol] == null) {
+                    buckets[symbol] = new int[4];
                 }
-                builder.append(" ").append(body.get(i));
+            } else if (bucketSizes[symbol] == buckets[symbol].length) {
+                buckets[symbol] = Arrays.copyOf(buckets[symbol], bucketSizes[symbol] * 2);
             }
+            // 桶中记录的是项目在闭包中的下标, 后继项目即为 closure[idx] + 1
+            buckets[symbol][bucketSizes[symbol]++] = idx;
+        }
 
-            if (dot == body.size()) {
-                builder.append(" .");
+        // 按符号编号的顺序排列后继, 与原先依次对每个文法符号求 GO(I, X) 的顺序一致
+        Arrays.sort(touched, 0, touchedCount);
+        final var result = new Successor[touchedCount];
+        for (int idx = 0; idx < touchedCount; idx++) {
+            final var symbol = touched[idx];
+            final var size = bucketSizes[symbol];
+            bucketSizes[symbol] = 0;
+
+            // 按后继项目排序, 同一闭包中的项目互不相同, 所以后继项目也互不相同
+            final var order = new long[size];
+            for (int i = 0; i < size; i++) {
+                final var from = buckets[symbol][i];
+                order[i] = ((long) (closure[from] + 1) << 32) | from;
+            }
+            Arrays.sort(order);
+
+            final var kernel = new int[size];
+            final var kernelLookaheads = lookaheads == null ? null : new BitSet[size];
+            for (int i = 0; i < size; i++) {
+                kernel[i] = (int) (order[i] >>> 32);
+                if (kernelLookaheads != null) {
+                    kernelLookaheads[i] = (BitSet) lookaheads[(int) order[i]].clone();
+                }
             }
+            result[idx] = new Successor(symbol, new Kernel(kernel, kernelLookaheads));
+        }
+
+        return result;
+    }
 
-            return builder.toString();
+    /**
+     * 为核创建新状态
+     *
+     * @param kernel  核
+     * @param itemSet 核对应的项目集
+     * @return 新状态的编号
+     */
+    private int addState(Kernel kernel, ItemSet itemSet) {
+        final var index = closures.size();
+        stateOfKernel.put(kernel, index);
+        closures.add(itemSet.items());
+        kernelSizes.add(kernel.items().length);
+        if (itemSet.lookaheads() != null) {
+            closureLookaheads.add(itemSet.lookaheads());
         }
+        final var row = new int[symbols.length];
+        Arrays.fill(row, -1);
+        transitions.add(row);
+        allStatusInIndexOrder.add(Status.create(index));
+        return index;
     }
 
-    private final Map<Set<Item>, Status> belongTo = new HashMap<>();
-    private final Map<Status, Set<Item>> including = new HashMap<>();
-    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+    /**
+     * @param kernel  核
+     * @param scratch 临时数组
+     * @return 核的闭包, LR(1) 时还包括闭包中各项目的向前看符号
+     */
+    private ItemSet closeKernel(Kernel kernel, Scratch scratch) {
+        final var items = constructClosure(kernel.items(), scratch);
+        final var lookaheads = kernel.lookaheads() == null ? null : closeLookaheads(items, kernel.lookaheads());
+        return new ItemSet(items, lookaheads);
+    }
 
     /**
-     * 构造出所有状态并维护状态与项集之间的对应关系
+     * 构造核的闭包, 相当于理论课中的 CLOSURE(I) 函数
+     *
+     * @param kernel  核
+     * @param scratch 临时数组
+     * @return 闭包中的所有项目, 核在前
      */
-    private void constructDFA() {
-        final var argumentProduction = productions.get(0);
-        final var initItem = new Item(argumentProduction, 0);
-        final var collections = constructCanonicalLRCollection(initItem);
+    private int[] constructClosure(int[] kernel, Scratch scratch) {
+        final var itemMark = scratch.itemMark;
+        final var headMark = scratch.headMark;
+        final var stamp = ++scratch.stamp;
+
+        var result = Arrays.copyOf(kernel, Math.max(kernel.length * 2, 8));
+        var size = kernel.length;
+        for (final var item : kernel) {
+            itemMark[item] = stamp;
+        }
 
-        for (int idx = 0; idx < collections.size(); idx++) {
-            final var status = Status.create(idx);
-            allStatusInIndexOrder.add(status);
+        // 采用 BFS 的方法, result 本身就是队列
+        for (int idx = 0; idx < size; idx++) {
+            final var symbol = itemAfterDot[result[idx]];
+            if (symbol < 0 || isTerminal(symbol) || headMark[symbol] == stamp) {
+                continue;
+            }
 
-            final var items = collections.get(idx);
-            including.put(status, items);
-            belongTo.put(items, status);
+            // 每个非终结符在一次闭包中只需要展开一次
+            headMark[symbol] = stamp;
+            for (final var production : productionsByHead[symbol]) {
+                final var item = itemBase[production];
+                if (itemMark[item] != stamp) {
+                    itemMark[item] = stamp;
+                    if (size == result.length) {
+                        result = Arrays.copyOf(result, size * 2);
+                    }
+                    result[size++] = item;
+                }
+            }
         }
+
+        return Arrays.copyOf(result, size);
     }
 
+    //==================== 并行 ==============================//
+
     /**
-     * @param head 头部符号
-     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
+     * 并行时每个叶子任务至少处理的元素个数
      */
-    private Stream<Production> getProductionsByHead(Term head) {
-        return productions.stream().filter(production -> production.head().equals(head));
-    }
+    private static final int PARALLEL_GRAIN = 16;
 
     /**
-     * 构造项集 {@code sourceItem} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
-     *
-     * @param sourceItem 项集 I
-     * @return 闭包
-     */
-    private Set<Item> constructClosure(Set<Item> sourceItem) {
-        // 采用 BFS 的方法来避免每次都检测集合的更改
-        final var result = new LinkedHashSet<>(sourceItem);
-        // 已经找到, 但是还未完全探索其能展开的项的项
-        // 类似于 BFS 的队列或者是 mark-and-sweep GC 算法里的灰色列表
-        final var unexpanded = new ArrayDeque<>(sourceItem);
-
-        while (!unexpanded.isEmpty()) {
-            final var top = unexpanded.pollFirst();
-            // 获得当前项中点后面的符号
-            top.getAfterDot().ifPresent(afterDot ->
-                // 随后查找以该符号作为头部的产生式
-                getProductionsByHead(afterDot)
-                    // 构造点在对应产生式开头的新项
-                    .map(production -> new Item(production, 0))
-                    // 对于不在 result 中的新项
-                    .filter(item -> !result.contains(item))
-                    // 加入队列并加入结果中
-                    .peek(unexpanded::add)
-                    .forEach(result::add));
+     * 对 [0, count) 中的每个下标执行 action; 未指定线程池时顺序执行
+     */
+    private void forEachParallel(int count, ObjIntConsumer<Scratch> action) {
+        if (pool == null || count <= PARALLEL_GRAIN) {
+            if (sequentialScratch == null) {
+                sequentialScratch = new Scratch();
+            }
+            for (int idx = 0; idx < count; idx++) {
+                action.accept(sequentialScratch, idx);
+            }
+        } else {
+            pool.invoke(new RangeAction(0, count, action));
         }
+    }
 
-        return result;
+    private Scratch sequentialScratch = null;
+
+    private final class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int begin;
+        private final int end;
+        private final ObjIntConsumer<Scratch> action;
+
+        RangeAction(int begin, int end, ObjIntConsumer<Scratch> action) {
+            this.begin = begin;
+            this.end = end;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - begin <= PARALLEL_GRAIN) {
+                final var scratch = new Scratch();
+                for (int idx = begin; idx < end; idx++) {
+                    action.accept(scratch, idx);
+                }
+            } else {
+                final var middle = (begin + end) >>> 1;
+                invokeAll(new RangeAction(begin, middle, action), new RangeAction(middle, end, action));
+            }
+        }
+    }
+
+    //==================== 向前看符号 ==============================//
+
+    private BitSet newLookaheadSet() {
+        return new BitSet(terminalCount);
     }
 
     /**
-     * 相当于理论课中的 GO(I, X) 函数 (转移函数)
+     * 已知核心项目的向前看符号, 求闭包中所有项目的向前看符号
+     * <br>
+     * 对于项目 [A -> alpha . B beta, L], 闭包中所有以 B 为头的项目都会得到 FIRST(beta) (beta 为空时为 L).
+     * 同一非终结符展开出的项目向前看符号相同, 所以只需为每个非终结符维护一个集合, 迭代到不动点即可.
      *
-     * @param items 当前项集 I
-     * @param term  文法符号 X
-     * @return I 关于 X 的后继项目集
-     */
-    private Set<Item> constructGoto(Set<Item> items, Term term) {
-        final var kernelForGoto = items.stream()
-            // 先筛选出 I 中所有点后面是 term 的项
-            .filter(item -> item.getAfterDot().map(term::equals).orElse(false))
-            // 然后分别求出每一个项的后继项
-            // 这个项集就是后继项目集的核
-            .map(Item::getNextItem).flatMap(Optional::stream)
-            .collect(Collectors.toSet());
-
-        // 随后从后继项目集的核中构造闭包即可得到后继项目集
-        return constructClosure(kernelForGoto);
+     * @param closure          闭包, 核心项目在前
+     * @param kernelLookaheads 各核心项目的向前看符号
+     * @return 闭包中各项目的向前看符号, 非核心项目中头部相同的项目共享同一个集合
+     */
+    private BitSet[] closeLookaheads(int[] closure, BitSet[] kernelLookaheads) {
+        final var kernelSize = kernelLookaheads.length;
+        final var byHead = new BitSet[nonTerminalCount];
+        final var result = new BitSet[closure.length];
+        System.arraycopy(kernelLookaheads, 0, result, 0, kernelSize);
+        for (int idx = kernelSize; idx < closure.length; idx++) {
+            final var head = productionHead[itemProduction[closure[idx]]];
+            if (byHead[head] == null) {
+                byHead[head] = newLookaheadSet();
+            }
+            result[idx] = byHead[head];
+        }
+
+        var changed = true;
+        while (changed) {
+            changed = false;
+            for (int idx = 0; idx < closure.length; idx++) {
+                final var item = closure[idx];
+                final var symbol = itemAfterDot[item];
+                if (symbol < 0 || isTerminal(symbol)) {
+                    continue;
+                }
+
+                // 文法中没有空产生式, beta 非空时 FIRST(beta) 就是其第一个符号的 first
+                final var body = productionBody[itemProduction[item]];
+                final var dot = itemDot[item];
+                final var source = dot + 1 < body.length ? first[body[dot + 1]] : result[idx];
+                changed |= union(byHead[symbol], source);
+            }
+        }
+
+        return result;
     }
 
     /**
-     * 构造 LR(0) 规范项目集族
-     *
-     * @param initItem 起始项目 S -> . S'
-     * @return 规范项目集族
+     * 以 "自发生成 + 传播" 的方法求出 LR(0) 项目集族中各核心项目的 LALR(1) 向前看符号
+     * <br>
+     * 对状态 I 的每个核心项目 K, 以伪终结符 # 为向前看符号求闭包. 对闭包中每个项目 [B -> gamma . X delta, L],
+     * L 中的真实终结符自发地生成为 GOTO(I, X) 中核心项目 B -> gamma X . delta 的向前看符号;
+     * 若 # 属于 L, 则 K 的向前看符号会传播给该核心项目. 起始项目的向前看符号为 EOF, 沿传播关系迭代到不动点即可.
+     * <br>
+     * 实现上不为每个核心项目单独求闭包: 状态 I 的第 k 个核心项目使用自己的伪终结符 #k (位于所有终结符之后),
+     * 整个状态只求一次闭包, 向前看符号中的 #k 即表示该项目的向前看符号由 K 传播而来.
      */
-    private List<Set<Item>> constructCanonicalLRCollection(Item initItem) {
-        // 先收集所有的文法符号备用
-        final var terms = new LinkedHashSet<Term>();
-        terms.addAll(nonTerminals);
-        terms.addAll(terminals);
+    private void calcLALRLookaheads() {
+        // 为所有状态的核心项目统一编号
+        final var stateCount = closures.size();
+        final var kernelOffset = new int[stateCount + 1];
+        for (int state = 0; state < stateCount; state++) {
+            kernelOffset[state + 1] = kernelOffset[state] + kernelSizes.get(state);
+        }
+        final var kernelItemCount = kernelOffset[stateCount];
+
+        final var lookaheads = new BitSet[kernelItemCount];
+        for (int idx = 0; idx < kernelItemCount; idx++) {
+            lookaheads[idx] = newLookaheadSet();
+        }
+        // 传播关系, propagateTo[k] 为核心项目 k 的向前看符号需要传播到的所有核心项目
+        final var propagateTo = new int[kernelItemCount][];
+        final var propagateCount = new int[kernelItemCount];
+
+        for (int state = 0; state < stateCount; state++) {
+            final var closure = closures.get(state);
+            final var row = transitions.get(state);
+            final var kernelSize = kernelSizes.get(state);
+
+            final var markers = new BitSet[kernelSize];
+            for (int k = 0; k < kernelSize; k++) {
+                markers[k] = new BitSet(terminalCount + kernelSize);
+                markers[k].set(terminalCount + k);
+            }
+            final var closureMarkers = closeLookaheads(closure, markers);
+
+            for (int idx = 0; idx < closure.length; idx++) {
+                final var item = closure[idx];
+                final var symbol = itemAfterDot[item];
+                if (symbol < 0) {
+                    continue;
+                }
 
-        // 构造初始项目集族
-        final var initClosure = constructClosure(Set.of(initItem));
-
-        // 同样以 BFS 形式搜索
-        final var result = new LinkedHashSet<>(Set.of(initClosure));
-        final var unexpanded = new ArrayDeque<>(Set.of(initClosure));
-
-        while (!unexpanded.isEmpty()) {
-            final var items = unexpanded.pollFirst();
-
-            // 对于每个未被探索的集族
-            for (final var term : terms) {
-                // 尝试对每一个文法符号都求一个后继项目集
-                final var to = constructGoto(items, term);
-                // 如果还没被加入到 result 中
-                if (!to.isEmpty() && !result.contains(to)) {
-                    // 就加入 result 和待探索列表中
-                    result.add(to);
-                    unexpanded.addLast(to);
+                final var target = row[symbol];
+                final var to = kernelOffset[target]
+                    + Arrays.binarySearch(closures.get(target), 0, kernelSizes.get(target), item + 1);
+
+                final var lookahead = closureMarkers[idx];
+                for (int bit = lookahead.nextSetBit(0); bit >= 0; bit = lookahead.nextSetBit(bit + 1)) {
+                    if (bit < terminalCount) {
+                        // 自发生成
+                        lookaheads[to].set(bit);
+                        continue;
+                    }
+
+                    // 由本状态第 bit - terminalCount 个核心项目传播而来
+                    final var from = kernelOffset[state] + bit - terminalCount;
+                    if (propagateTo[from] == null) {
+                        propagateTo[from] = new int[4];
+                    } else if (propagateCount[from] == propagateTo[from].length) {
+                        propagateTo[from] = Arrays.copyOf(propagateTo[from], propagateCount[from] * 2);
+                    }
+                    propagateTo[from][propagateCount[from]++] = to;
+                }
+            }
+        }
+
+        // 起始项目 S -> . S' 的向前看符号为 EOF
+        lookaheads[0].set(terminalBit(symbolOf.get(TokenKind.eof())));
+
+        // 沿传播关系迭代到不动点
+        final var worklist = new ArrayDeque<Integer>();
+        final var queued = new boolean[kernelItemCount];
+        for (int idx = 0; idx < kernelItemCount; idx++) {
+            if (!lookaheads[idx].isEmpty()) {
+                worklist.add(idx);
+                queued[idx] = true;
+            }
+        }
+        while (!worklist.isEmpty()) {
+            final int from = worklist.poll();
+            queued[from] = false;
+            for (int i = 0; i < propagateCount[from]; i++) {
+                final var to = propagateTo[from][i];
+                if (union(lookaheads[to], lookaheads[from]) && !queued[to]) {
+                    worklist.add(to);
+                    queued[to] = true;
                 }
             }
         }
 
-        return new ArrayList<>(result);
+        for (int state = 0; state < stateCount; state++) {
+            final var kernelLookaheads = Arrays.copyOfRange(lookaheads, kernelOffset[state], kernelOffset[state + 1]);
+            closureLookaheads.add(closeLookaheads(closures.get(state), kernelLookaheads));
+        }
     }
 
     /**
      * 构造 LR 分析表 (填充各个 status 中的 action 与 goto)
      */
     private void genTable() {
+        final var eof = TokenKind.eof();
+
         // 依索引顺序对每个状态的每个项目
         for (final var status : allStatusInIndexOrder) {
-            for (final var item : including.get(status)) {
-                final var afterDotOpt = item.getAfterDot();
+            final var row = transitions.get(status.index());
+            final var closure = closures.get(status.index());
+            final var lookaheads = mode == Mode.SLR ? null : closureLookaheads.get(status.index());
+            for (int idx = 0; idx < closure.length; idx++) {
+                final var item = closure[idx];
+                final var symbol = itemAfterDot[item];
+                final var production = productions.get(itemProduction[item]);
 
                 // 根据项目的点的位置和点后面跟着的文法符号进行分类
-                if (afterDotOpt.isEmpty()) {
-                    final var argumentProduction = productions.get(0);
-                    if (item.production().equals(argumentProduction)) {
+                if (symbol < 0) {
+                    if (itemProduction[item] == 0) {
                         // S -> S' .
                         // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
-                        status.setAction(TokenKind.eof(), Action.accept());
+                        status.setAction(eof, Action.accept());
                     } else {
                         // A -> alpha .
                         // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
-                        final var production = item.production();
-                        final var head = production.head();
-                        for (final var a : follow.get(head)) {
-                            status.setAction(a, Action.reduce(production));
+                        // LR(1) 与 LALR 则只在该项目的向前看符号上规约
+                        final var reduce = Action.reduce(production);
+                        final var lookahead = lookaheads == null
+                            ? follow[productionHead[itemProduction[item]]]
+                            : lookaheads[idx];
+                        for (int bit = lookahead.nextSetBit(0); bit >= 0; bit = lookahead.nextSetBit(bit + 1)) {
+                            status.setAction(terminalOfBit(bit), reduce);
                         }
                     }
 
                 } else {
-                    final var symbol = afterDotOpt.get();
-                    final var next = belongTo.get(constructGoto(including.get(status), symbol));
+                    final var next = allStatusInIndexOrder.get(row[symbol]);
 
-                    if (symbol instanceof TokenKind tokenKind) {
+                    if (symbols[symbol] instanceof TokenKind tokenKind) {
                         // A -> alpha . a beta
                         // 如果项目代表某个产生式的中间, 并且接着一个终结符的情况, 我们就移入该终结符
                         status.setAction(tokenKind, Action.shift(next));
-                    } else if (symbol instanceof NonTerminal nonTerminal) {
+                    } else if (symbols[symbol] instanceof NonTerminal nonTerminal) {
                         // A -> alpha . B beta
                         // 如果项目代表某个产生式的中间, 并且接着一个非终结符的情况,
                         // 我们就转移到 B 解析之后的状态中去 (即 GO(I, B) 对应的状态)
@@ -405,6 +824,42 @@ public class TableGenerator {
         }
     }
 
+    /**
+     * 对于 A -> B . C, 输出 {@code A ->  B . C}, 与原先项目的输出格式相同; 有向前看符号时在其后附上 {@code , a/b}
+     *
+     * @param item      项目编号
+     * @param lookahead 向前看符号集合, 可以为 null
+     * @return 项目的文本表示
+     */
+    private String itemToString(int item, BitSet lookahead) {
+        final var builder = new StringBuilder();
+        final var production = productions.get(itemProduction[item]);
+        final var dot = itemDot[item];
+
+        builder.append(production.head());
+        builder.append(" -> ");
+
+        final var body = production.body();
+        for (int i = 0; i < body.size(); i++) {
+            if (i == dot) {
+                builder.append(" .");
+            }
+            builder.append(" ").append(body.get(i));
+        }
+
+        if (dot == body.size()) {
+            builder.append(" .");
+        }
+
+        if (lookahead != null) {
+            final var joiner = new StringJoiner("/", ", ", "");
+            lookahead.stream().forEach(bit -> joiner.add(terminalOfBit(bit).toString()));
+            builder.append(joiner);
+        }
+
+        return builder.toString();
+    }
+
     // 我们在 Status.setAction/setGoto 中检查规约-规约冲突与移入-规约冲突
     // 如果有冲突, 它们会抛出 RuntimeException
 }
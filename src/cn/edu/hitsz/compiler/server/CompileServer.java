@@ -0,0 +1,253 @@
+package cn.edu.hitsz.compiler.server;
+
+import cn.edu.hitsz.compiler.CompilationPipeline;
+import cn.edu.hitsz.compiler.CompilationResult;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 常驻的编译服务器
+ * <br>
+ * 每次启动编译器都要付出 JVM 启动, 读取码点文件与分析表, 以及词法分析与 LR 驱动循环冷启动 (解释执行) 的代价, 对于很小的程序这些代价远大于编译本身.
+ * 服务器启动时读好这些数据并反复编译一段示例程序预热 JIT, 之后常驻内存, 通过标准输入输出或 Unix domain socket 接受编译请求,
+ * 在内存中完成编译并返回结果, 不读写任何文件.
+ * <br>
+ * 协议以行为单位, 使用 UTF-8 编码:
+ * <pre>
+ * 请求:
+ *   COMPILE          其后为源代码的各行, 以单独一行 "." 结束; 以 "." 开头的源代码行需要再加一个 "."
+ *   PING             回复 PONG
+ *   QUIT             关闭连接 (标准输入输出模式下退出服务器)
+ * COMPILE 的回复:
+ *   OK &lt;耗时 (微秒)&gt;
+ *   TOKENS &lt;n&gt;       其后 n 行为词法单元流 (按需分析时省略该节)
+ *   PARSER &lt;n&gt;       其后 n 行为规约出的产生式列表
+ *   SYMBOLS &lt;n&gt;      其后 n 行为语义分析后的符号表
+ *   IR &lt;n&gt;           其后 n 行为中间代码
+ *   RESULT &lt;值&gt;       IR 模拟执行的结果
+ *   ASM &lt;n&gt;          其后 n 行为汇编代码
+ *   END
+ * 编译失败 (词法, 语法或语义错误) 时的回复:
+ *   ERROR &lt;原因&gt;
+ *   END
+ * </pre>
+ * 编译过程中各阶段的调试输出 (System.out) 在服务器模式下被丢弃, 标准输出只用于协议本身.
+ *
+ * @author hogan
+ */
+public class CompileServer {
+    /**
+     * 用于预热的示例程序, 覆盖了源语言的所有语句与运算
+     */
+    private static final String WARM_UP_PROGRAM = """
+        int result;
+        int a;
+        int b;
+        int c;
+        a = 8;
+        b = 5;
+        c = 3 - a;
+        result = a * b - ( 3 + b ) * ( c - a );
+        return result;""";
+
+    /**
+     * 有语法错误的示例程序, 用于确认服务器对编译失败的请求回复 ERROR
+     */
+    private static final String SYNTAX_ERROR_PROGRAM = """
+        int a;
+        a = 3 +;
+        return a;""";
+
+    private final CompilationPipeline pipeline;
+
+    /**
+     * @param pipeline 所有请求共享的编译流水线
+     */
+    public CompileServer(CompilationPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * 丢弃编译过程中的调试输出, 服务器模式下应在读取请求之前调用
+     *
+     * @return 原来的标准输出, 供协议使用
+     */
+    public static PrintStream detachStandardOutput() {
+        final var stdout = System.out;
+        System.setOut(new PrintStream(PrintStream.nullOutputStream()));
+        return stdout;
+    }
+
+    /**
+     * 反复编译示例程序, 让 JIT 编译各阶段的热点代码, 最后按协议检查一次正常与出错的请求
+     *
+     * @param iterations 编译次数
+     * @throws RuntimeException 服务器对检查请求的回复不符合协议
+     */
+    public void warmUp(int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            pipeline.compileSource(WARM_UP_PROGRAM);
+        }
+        selfCheck();
+    }
+
+    /**
+     * 在内存中发送一个正常的与一个有语法错误的 COMPILE 请求, 确认回复分别为 OK 与 ERROR
+     */
+    private void selfCheck() {
+        final var request = "COMPILE\n" + WARM_UP_PROGRAM + "\n.\nCOMPILE\n" + SYNTAX_ERROR_PROGRAM + "\n.\nQUIT\n";
+        final var reply = new StringWriter();
+        try {
+            serve(new BufferedReader(new StringReader(request)), reply);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        final var lines = reply.toString().split("\n");
+        final var firstEnd = Arrays.asList(lines).indexOf("END");
+        if (!lines[0].startsWith("OK ") || firstEnd < 0 || firstEnd + 1 >= lines.length
+            || !lines[firstEnd + 1].startsWith("ERROR ")) {
+            throw new RuntimeException("Unexpected self-check reply: " + reply);
+        }
+    }
+
+    /**
+     * 在标准输入输出上处理请求, 直到收到 QUIT 或标准输入关闭
+     *
+     * @param stdout 标准输出, 见 {@link #detachStandardOutput()}
+     */
+    public void serveStdio(PrintStream stdout) throws IOException {
+        final var in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        final var out = new BufferedWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8));
+        serve(in, out);
+    }
+
+    /**
+     * 在 Unix domain socket 上接受连接, 每个连接在一个独立的线程上处理, 直到对方发送 QUIT 或关闭连接
+     *
+     * @param socketPath socket 文件路径, 已存在的文件会被删除
+     */
+    public void serveUnixSocket(Path socketPath) throws IOException {
+        Files.deleteIfExists(socketPath);
+        final var connectionId = new AtomicInteger();
+        final var executor = Executors.newCachedThreadPool(runnable -> {
+            final var thread = new Thread(runnable, "compile-connection-" + connectionId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // 服务器通常由信号结束, 此时 finally 不会执行, 由关闭钩子删除 socket 文件
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> socketPath.toFile().delete()));
+        try (final var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            System.err.println("Listening on " + socketPath);
+            while (true) {
+                final var channel = server.accept();
+                executor.execute(() -> serveConnection(channel));
+            }
+        } finally {
+            executor.shutdownNow();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    private void serveConnection(SocketChannel channel) {
+        try (channel) {
+            final var in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            final var out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+            serve(in, out);
+        } catch (IOException e) {
+            System.err.println("Connection closed: " + e);
+        }
+    }
+
+    /**
+     * 处理一个连接上的所有请求
+     *
+     * @param in  请求
+     * @param out 回复, 每个回复结束时刷新
+     */
+    public void serve(BufferedReader in, Writer out) throws IOException {
+        String command;
+        while ((command = in.readLine()) != null) {
+            switch (command.strip()) {
+                case "COMPILE" -> compile(readSource(in), out);
+                case "PING" -> out.write("PONG\n");
+                case "QUIT" -> {
+                    out.flush();
+                    return;
+                }
+                case "" -> {
+                    continue;
+                }
+                default -> out.write("ERROR unknown command: " + command + "\nEND\n");
+            }
+            out.flush();
+        }
+    }
+
+    private static String readSource(BufferedReader in) throws IOException {
+        final var source = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null && !line.equals(".")) {
+            if (!source.isEmpty()) {
+                source.append('\n');
+            }
+            source.append(line.startsWith("..") ? line.substring(1) : line);
+        }
+        return source.toString();
+    }
+
+    private void compile(String source, Writer out) throws IOException {
+        final var start = System.nanoTime();
+        final CompilationResult result;
+        try {
+            result = pipeline.compileSource(source);
+        } catch (RuntimeException e) {
+            out.write("ERROR " + String.valueOf(e.getMessage()).replace('\n', ' ') + "\nEND\n");
+            return;
+        }
+        final var micros = (System.nanoTime() - start) / 1000;
+
+        out.write("OK " + micros + "\n");
+        if (result.tokens() != null) {
+            writeSection(out, "TOKENS", result.tokens());
+        }
+        writeSection(out, "PARSER", result.parserList());
+        writeSection(out, "SYMBOLS", result.newSymbolTable());
+        writeSection(out, "IR", result.intermediateCode());
+        out.write("RESULT " + result.emulateResult() + "\n");
+        writeSection(out, "ASM", result.assembly());
+        out.write("END\n");
+    }
+
+    private static void writeSection(Writer out, String name, List<String> lines) throws IOException {
+        // 有的条目自身带有换行 (如汇编代码), 按写入文件后的实际行数计数
+        final var physicalLines = lines.isEmpty() ? new String[0] : String.join("\n", lines).split("\n", -1);
+        out.write(name + " " + physicalLines.length + "\n");
+        for (final var line : physicalLines) {
+            out.write(line);
+            out.write('\n');
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -85,6 +86,13 @@ public class SymbolTable {
      * @param path 输出文件路径
      */
     public void dumpTable(String path) {
+        FileUtils.writeLines(path, toLines());
+    }
+
+    /**
+     * @return 按格式输出的符号表的各行, 与 {@link #dumpTable(String)} 写入文件的内容相同
+     */
+    public List<String> toLines() {
         final var entriesInOrder = new ArrayList<>(getAllEntries().values());
         entriesInOrder.sort(Comparator.comparing(SymbolTableEntry::getText));
 
@@ -94,7 +102,7 @@ public class SymbolTable {
             lines.add("(%s, %s)".formatted(entry.getText(), entry.getType()));
         }
 
-        FileUtils.writeLines(path, lines);
+        return lines;
     }
 }
 
@@ -25,6 +25,11 @@ public final class FilePathConfig {
      */
     public final static String LR1_TABLE_PATH = "data/in/LR1_table.csv";
 
+    /**
+     * 词法规则
+     */
+    public final static String LEXER_SPEC_PATH = "data/in/lexer_spec.txt";
+
 
     //==================================== 输出文件 ========================================//
     /**
@@ -57,11 +62,26 @@ public final class FilePathConfig {
      */
     public static final String EMULATE_RESULT = "data/out/ir_emulate_result.txt";
 
+    /**
+     * 编译后的 LR 分析表的二进制缓存
+     */
+    public static final String LR_TABLE_CACHE_PATH = "data/out/lr_table.bin";
+
     /**
      * 汇编代码
      */
     public static final String ASSEMBLY_LANGUAGE_PATH = "data/out/assembly_language.asm";
 
+    /**
+     * 各阶段的性能指标 (JSON)
+     */
+    public static final String METRICS_PATH = "data/out/metrics.json";
+
+    /**
+     * 批量编译的输出目录, 每个源文件的输出位于其中以文件名命名的子目录
+     */
+    public static final String BATCH_OUTPUT_DIR = "data/out/batch";
+
     private FilePathConfig() {
     }
 }
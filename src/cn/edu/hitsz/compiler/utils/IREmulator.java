@@ -4,72 +4,244 @@ import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionBuffer;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.jfr.EmulatorEvent;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 /**
  * 用来模拟执行 IR 的类
+ * <br>
+ * 加载时先把 IR 译码为一个扁平的 int 数组: 每条指令占 4 个 int, 依次为操作码, 结果槽位与两个操作数.
+ * 变量按编号映射到 int 变量表中的槽位 (具名变量在前, 临时变量在后), 槽位数只取决于 IR 中实际出现的变量编号, 立即数直接存放在操作数中, 操作码按操作数是变量还是立即数区分,
+ * 两个操作数都是立即数的运算在译码时就算出结果. 执行时只在 int 数组上做下标访问, 不再分配对象.
+ * <br>
+ * IR 是没有跳转的直线代码, 某个变量在某条指令处是否已被赋值在译码时就能确定: 读取未赋值变量的运算被译为抛出异常的指令,
+ * 复制未赋值的变量使结果变量同样未赋值, 返回未赋值的变量时没有返回值, 与逐条解释执行时的行为相同. 多条 RET 时以最后执行的一条为准.
  */
 public class IREmulator {
+    //============================== 操作码 ==============================
+    // 后缀表示两个操作数的种类, V 为变量, I 为立即数
+    private static final int ADD_VV = 0;
+    private static final int ADD_VI = 1;
+    private static final int ADD_IV = 2;
+    private static final int SUB_VV = 3;
+    private static final int SUB_VI = 4;
+    private static final int SUB_IV = 5;
+    private static final int MUL_VV = 6;
+    private static final int MUL_VI = 7;
+    private static final int MUL_IV = 8;
+    private static final int MOV_V = 9;
+    private static final int MOV_I = 10;
+    private static final int RET_V = 11;
+    private static final int RET_I = 12;
+    /**
+     * 返回未赋值的变量, 清除已有的返回值
+     */
+    private static final int RET_NONE = 13;
+    /**
+     * 读取了未赋值的变量, 操作数为 failures 中的下标
+     */
+    private static final int FAIL = 14;
+    /**
+     * 复制未赋值的变量, 运行时什么也不做
+     */
+    private static final int NOP = 15;
+
+    private static final int WIDTH = 4;
+
     public static IREmulator load(List<Instruction> instructions) {
         return new IREmulator(instructions);
     }
 
     public Optional<Integer> execute() {
-        for (final var instruction : instructions) {
-            switch (instruction.getKind()) {
-                case MOV -> {
-                    final var from = eval(instruction.getFrom());
-                    environment.put(instruction.getResult(), from);
+        final var event = new EmulatorEvent();
+        event.begin();
+        final var code = this.code;
+        final var vars = new int[slotCount];
+        var hasReturn = false;
+        var returned = 0;
+        for (int pc = 0; pc < code.length; pc += WIDTH) {
+            final var a = code[pc + 2];
+            final var b = code[pc + 3];
+            switch (code[pc]) {
+                case ADD_VV -> vars[code[pc + 1]] = vars[a] + vars[b];
+                case ADD_VI -> vars[code[pc + 1]] = vars[a] + b;
+                case ADD_IV -> vars[code[pc + 1]] = a + vars[b];
+                case SUB_VV -> vars[code[pc + 1]] = vars[a] - vars[b];
+                case SUB_VI -> vars[code[pc + 1]] = vars[a] - b;
+                case SUB_IV -> vars[code[pc + 1]] = a - vars[b];
+                case MUL_VV -> vars[code[pc + 1]] = vars[a] * vars[b];
+                case MUL_VI -> vars[code[pc + 1]] = vars[a] * b;
+                case MUL_IV -> vars[code[pc + 1]] = a * vars[b];
+                case MOV_V -> vars[code[pc + 1]] = vars[a];
+                case MOV_I -> vars[code[pc + 1]] = a;
+                case RET_V -> {
+                    hasReturn = true;
+                    returned = vars[a];
                 }
-
-                case ADD -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs + rhs);
-                }
-
-                case SUB -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs - rhs);
+                case RET_I -> {
+                    hasReturn = true;
+                    returned = a;
                 }
-
-                case MUL -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs * rhs);
+                case RET_NONE -> hasReturn = false;
+                case FAIL -> throw new RuntimeException(failures.get(a));
+                case NOP -> {
                 }
-
-                case RET -> this.returnValue = eval(instruction.getReturnValue());
-
-                default -> throw new RuntimeException("Unknown instruction kind: " + instruction.getKind());
+                default -> throw new RuntimeException("Unknown opcode: " + code[pc]);
             }
         }
+        this.variables = vars;
+        this.returnValue = hasReturn ? returned : null;
 
+        if (event.shouldCommit()) {
+            event.instructions = code.length / WIDTH;
+            event.result = String.valueOf(this.returnValue);
+            event.commit();
+        }
         return Optional.ofNullable(this.returnValue);
     }
 
+    /**
+     * @param value IR 值
+     * @return 立即数的值, 或变量在上次执行结束时的值, 未赋值时为 null
+     */
     public Integer eval(IRValue value) {
         if (value instanceof IRImmediate immediate) {
             return immediate.getValue();
         } else if (value instanceof IRVariable variable) {
-            return environment.get(variable);
+            // IR 中没有出现的变量没有槽位, 不能按编号换算, 否则具名变量会落到临时变量的槽位上
+            final var id = variable.id();
+            final var inRange = id >= 0 ? id < namedSlots : ~id < slotCount - namedSlots;
+            if (variables == null || !inRange || !assignedAtEnd[slotOf(id)]) {
+                return null;
+            }
+            return variables[slotOf(id)];
         } else {
             throw new RuntimeException("Unknown IR value type");
         }
     }
 
     private IREmulator(List<Instruction> instructions) {
-        this.instructions = instructions;
-        this.environment = new HashMap<>();
+        final var buffer = instructions instanceof InstructionBuffer compact ? compact : copyOf(instructions);
+        final var size = buffer.size();
+
+        // 具名变量的编号都小于缓冲区中出现过的具名变量编号的上界, 临时变量排在它们之后
+        this.namedSlots = buffer.namedBound();
+        var maxTemp = -1;
+        for (int i = 0; i < size; i++) {
+            if (buffer.kind(i) != InstructionKind.RET) {
+                maxTemp = Math.max(maxTemp, tempIndexOf(buffer.result(i)));
+            }
+            if (!buffer.isLhsImmediate(i)) {
+                maxTemp = Math.max(maxTemp, tempIndexOf(buffer.lhs(i)));
+            }
+            if (buffer.kind(i).isBinary() && !buffer.isRhsImmediate(i)) {
+                maxTemp = Math.max(maxTemp, tempIndexOf(buffer.rhs(i)));
+            }
+        }
+        this.slotCount = namedSlots + maxTemp + 1;
+
+        this.code = new int[size * WIDTH];
+        final var assigned = new boolean[slotCount];
+        for (int i = 0; i < size; i++) {
+            decode(buffer, i, assigned);
+        }
+        this.assignedAtEnd = assigned;
+        this.variables = null;
         this.returnValue = null;
     }
 
-    private final List<Instruction> instructions;
-    private final Map<IRVariable, Integer> environment;
+    private static InstructionBuffer copyOf(List<Instruction> instructions) {
+        final var buffer = new InstructionBuffer(instructions.size());
+        buffer.addAll(instructions);
+        return buffer;
+    }
+
+    private static int tempIndexOf(int id) {
+        return id < 0 ? ~id : -1;
+    }
+
+    private int slotOf(int id) {
+        return id >= 0 ? id : namedSlots + ~id;
+    }
+
+    /**
+     * 译码第 index 条指令, 并按它更新各槽位是否已被赋值
+     */
+    private void decode(InstructionBuffer buffer, int index, boolean[] assigned) {
+        final var pc = index * WIDTH;
+        final var kind = buffer.kind(index);
+        final var lhsImmediate = buffer.isLhsImmediate(index);
+        final var a = lhsImmediate ? buffer.lhs(index) : slotOf(buffer.lhs(index));
+
+        switch (kind) {
+            case RET -> {
+                if (lhsImmediate) {
+                    emit(pc, RET_I, 0, a, 0);
+                } else {
+                    emit(pc, assigned[a] ? RET_V : RET_NONE, 0, a, 0);
+                }
+            }
+            case MOV -> {
+                final var result = slotOf(buffer.result(index));
+                if (lhsImmediate) {
+                    emit(pc, MOV_I, result, a, 0);
+                    assigned[result] = true;
+                } else if (assigned[a]) {
+                    emit(pc, MOV_V, result, a, 0);
+                    assigned[result] = true;
+                } else {
+                    emit(pc, NOP, 0, 0, 0);
+                    assigned[result] = false;
+                }
+            }
+            case ADD, SUB, MUL -> {
+                final var result = slotOf(buffer.result(index));
+                final var rhsImmediate = buffer.isRhsImmediate(index);
+                final var b = rhsImmediate ? buffer.rhs(index) : slotOf(buffer.rhs(index));
+                if ((!lhsImmediate && !assigned[a]) || (!rhsImmediate && !assigned[b])) {
+                    failures.add("Variable read before assignment in " + buffer.get(index));
+                    emit(pc, FAIL, 0, failures.size() - 1, 0);
+                } else if (lhsImmediate && rhsImmediate) {
+                    emit(pc, MOV_I, result, fold(kind, a, b), 0);
+                } else {
+                    final var base = switch (kind) {
+                        case ADD -> ADD_VV;
+                        case SUB -> SUB_VV;
+                        default -> MUL_VV;
+                    };
+                    emit(pc, base + (rhsImmediate ? 1 : lhsImmediate ? 2 : 0), result, a, b);
+                }
+                assigned[result] = true;
+            }
+            default -> throw new RuntimeException("Unknown instruction kind: " + kind);
+        }
+    }
+
+    private static int fold(InstructionKind kind, int lhs, int rhs) {
+        return switch (kind) {
+            case ADD -> lhs + rhs;
+            case SUB -> lhs - rhs;
+            default -> lhs * rhs;
+        };
+    }
+
+    private void emit(int pc, int opcode, int result, int a, int b) {
+        code[pc] = opcode;
+        code[pc + 1] = result;
+        code[pc + 2] = a;
+        code[pc + 3] = b;
+    }
+
+    private final int[] code;
+    private final int namedSlots;
+    private final int slotCount;
+    private final boolean[] assignedAtEnd;
+    private final List<String> failures = new ArrayList<>();
+    private int[] variables;
     private Integer returnValue;
 }